@@ -0,0 +1,185 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A small microbenchmark harness, in the style of JMH, that needs nothing but
+ * the JDK and runs without a display.
+ * 
+ * Each benchmark is run in a number of timed iterations. The first few are
+ * warmup iterations, which give the JIT compiler time to compile the code
+ * under test, and are thrown away. The rest are measurement iterations, from
+ * which the average time per operation is reported. Every result an operation
+ * returns is consumed by a blackhole, so the JIT compiler can't eliminate the
+ * work that produced it.
+ * 
+ * @author James Morrow
+ *
+ */
+public class Harness {
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final Pattern filter;
+
+    // results
+    private final List<String> names = new ArrayList<String>();
+    private final List<double[]> nanosPerOps = new ArrayList<double[]>();
+
+    // blackhole
+    private static volatile int sink;
+
+    /**
+     * 
+     * @param warmupIterations
+     *            The number of iterations to throw away.
+     * @param measurementIterations
+     *            The number of iterations to report.
+     * @param iterationMillis
+     *            How long each iteration lasts, in milliseconds.
+     * @param filter
+     *            A regular expression. Only benchmarks whose names contain a
+     *            match are run.
+     */
+    public Harness(int warmupIterations, int measurementIterations, int iterationMillis, String filter) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+        this.filter = Pattern.compile(filter);
+    }
+
+    /**
+     * Creates a Harness configured from command line arguments of the form
+     * "-wi 5 -i 5 -t 500 regex", where -wi is the number of warmup
+     * iterations, -i is the number of measurement iterations, -t is the length
+     * of an iteration in milliseconds, and the regex selects which benchmarks
+     * to run. Every argument is optional.
+     * 
+     * @param args
+     *            The command line arguments.
+     * @return The Harness.
+     */
+    public static Harness fromArgs(String[] args) {
+        int wi = 5, i = 5, t = 500;
+        String filter = "";
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-wi") && k + 1 < args.length) {
+                wi = Integer.parseInt(args[++k]);
+            } else if (args[k].equals("-i") && k + 1 < args.length) {
+                i = Integer.parseInt(args[++k]);
+            } else if (args[k].equals("-t") && k + 1 < args.length) {
+                t = Integer.parseInt(args[++k]);
+            } else {
+                filter = args[k];
+            }
+        }
+        return new Harness(wi, i, t, filter);
+    }
+
+    /**
+     * An operation to benchmark.
+     */
+    public static interface Op {
+        /**
+         * Performs the operation once.
+         * 
+         * @return Something computed by the operation, which is consumed so
+         *         that the operation can't be optimized away.
+         */
+        public Object run();
+    }
+
+    /**
+     * Runs the given benchmark, if its name matches the filter, and prints its
+     * result.
+     * 
+     * @param name
+     *            The name of the benchmark.
+     * @param op
+     *            The operation to benchmark.
+     */
+    public void run(String name, Op op) {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(op);
+        }
+
+        double[] results = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            results[i] = iterate(op);
+        }
+
+        names.add(name);
+        nanosPerOps.add(results);
+        System.out.println(format(name, results));
+    }
+
+    /**
+     * Runs the operation repeatedly until the iteration time is up.
+     * 
+     * @param op
+     *            The operation.
+     * @return The average time per operation, in nanoseconds.
+     */
+    private double iterate(Op op) {
+        long numOps = 0;
+        long startNanos = System.nanoTime();
+        long elapsedNanos;
+        do {
+            // check the clock only every so often, so reading it doesn't
+            // dominate fast operations
+            for (int i = 0; i < 64; i++) {
+                consume(op.run());
+            }
+            numOps += 64;
+            elapsedNanos = System.nanoTime() - startNanos;
+        } while (elapsedNanos < iterationNanos);
+        return (double) elapsedNanos / numOps;
+    }
+
+    /**
+     * Consumes a value, so the JIT compiler has to compute it.
+     * 
+     * @param x
+     *            The value.
+     */
+    private static void consume(Object x) {
+        sink += System.identityHashCode(x);
+    }
+
+    /**
+     * Prints a summary of every benchmark that has been run.
+     */
+    public void printSummary() {
+        System.out.println();
+        System.out.println(String.format("%-40s %14s %12s", "Benchmark", "ns/op", "error"));
+        for (int i = 0; i < names.size(); i++) {
+            System.out.println(format(names.get(i), nanosPerOps.get(i)));
+        }
+    }
+
+    /**
+     * Formats the result of a benchmark as its mean time per operation plus or
+     * minus the standard deviation.
+     */
+    private static String format(String name, double[] results) {
+        double mean = 0;
+        for (double x : results) {
+            mean += x;
+        }
+        mean /= results.length;
+
+        double variance = 0;
+        for (double x : results) {
+            variance += (x - mean) * (x - mean);
+        }
+        double stdDev = (results.length > 1) ? Math.sqrt(variance / (results.length - 1)) : 0;
+
+        return String.format("%-40s %14.2f %12s", name, mean, "+- " + String.format("%.2f", stdDev));
+    }
+}
@@ -0,0 +1,189 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import phasing.PhasesPApplet;
+import phasing.Phrase;
+import phasing.PhraseReader;
+import phasing.PhraseReader.PhraseReaderListener;
+import phasing.Scale;
+import phasing.ScaleSet;
+import processing.data.JSONObject;
+
+/**
+ * Benchmarks the phrase model and the playback math: the paths that run on
+ * every edit and every frame. Runs without a display, so it can be run on a
+ * build machine.
+ * 
+ * Run it from the project folder (so it can find data/scales), with the jars
+ * in lib on the classpath. See Harness.fromArgs() for the arguments it takes.
+ * 
+ * @author James Morrow
+ *
+ */
+public class PhraseBenchmarks {
+    // phrase lengths, in cells
+    private static final int[] LENGTHS = new int[] { 8, 32, 128 };
+
+    public static void main(String[] args) throws Exception {
+        Harness h = Harness.fromArgs(args);
+        Scale scale = loadScale(new File("data/scales/major scales.json"), 0);
+
+        for (final int n : LENGTHS) {
+            final Phrase phrase = randomPhrase(n, scale, new Random(n));
+            final JSONObject json = phrase.toJSON();
+
+            // updateSCValues() is private because it is an implementation
+            // detail, so it's reached by reflection
+            final Method updateSCValues = Phrase.class.getDeclaredMethod("updateSCValues");
+            updateSCValues.setAccessible(true);
+            h.run("Phrase.updateSCValues n=" + n, new Harness.Op() {
+                public Object run() {
+                    try {
+                        updateSCValues.invoke(phrase);
+                    } catch (ReflectiveOperationException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return phrase;
+                }
+            });
+
+            h.run("Phrase.reverse n=" + n, new Harness.Op() {
+                public Object run() {
+                    return Phrase.reverse(phrase);
+                }
+            });
+
+            h.run("Phrase.toJSON n=" + n, new Harness.Op() {
+                public Object run() {
+                    return phrase.toJSON();
+                }
+            });
+
+            h.run("Phrase(JSONObject) n=" + n, new Harness.Op() {
+                public Object run() {
+                    return new Phrase(json);
+                }
+            });
+
+            // a reader advancing by a frame's worth of musical time, as it
+            // does on every frame at 60 fps and 140 bpm
+            final PhraseReader reader = new PhraseReader(phrase, 0, COUNTER);
+            final float dNotept = 140f / 60f / 60f;
+            h.run("PhraseReader.update n=" + n, new Harness.Op() {
+                public Object run() {
+                    reader.update(dNotept);
+                    return reader;
+                }
+            });
+
+            // a reader waking up at points spread over the phrase
+            final float totalDuration = phrase.getTotalDuration();
+            h.run("PhraseReader.wakeUp n=" + n, new Harness.Op() {
+                float notept = 0;
+
+                public Object run() {
+                    notept = (notept + 0.618034f * totalDuration) % totalDuration;
+                    reader.wakeUp(notept);
+                    return reader;
+                }
+            });
+        }
+
+        final Scale s = scale;
+        h.run("Scale.getIndexOfNoteValue", new Harness.Op() {
+            int pitch = 0;
+
+            public Object run() {
+                pitch = (pitch + 7) % 128;
+                return s.getIndexOfNoteValue(pitch);
+            }
+        });
+
+        h.run("PhasesPApplet.remainder(int)", new Harness.Op() {
+            int num = -1000;
+
+            public Object run() {
+                num = (num < 1000) ? num + 7 : -1000;
+                return PhasesPApplet.remainder(num, 12);
+            }
+        });
+
+        h.run("PhasesPApplet.remainder(float)", new Harness.Op() {
+            float num = -100;
+
+            public Object run() {
+                num = (num < 100) ? num + 0.7f : -100;
+                return PhasesPApplet.remainder(num, 3.5f);
+            }
+        });
+
+        // never shown, only used for its phrase generation
+        final PhasesPApplet pa = new PhasesPApplet();
+        final String[] templates = new String[] { "ABCDAECF", "ABCDABCE", "ABCDEBADCBED",
+                "ABCDEBADFBEDABGDEBADHBED", "ABCDAECFADCEAGCDAECHADCE" };
+        h.run("generatePhraseFromTemplates", new Harness.Op() {
+            public Object run() {
+                return pa.generatePhraseFromTemplates(templates, s, 4, true);
+            }
+        });
+
+        h.printSummary();
+        System.exit(0);
+    }
+
+    /**
+     * Counts the notes read by PhraseReaders, so that reading a note does some
+     * work.
+     */
+    private static final PhraseReaderListener COUNTER = new PhraseReaderListener() {
+        int numNoteEvents;
+
+        public void noteEvent(PhraseReader reader) {
+            numNoteEvents += reader.getNoteIndex();
+        }
+    };
+
+    /**
+     * Loads the ith scale of the scale set in the given file.
+     */
+    static Scale loadScale(File file, int i) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            return new ScaleSet(new JSONObject(reader)).getScale(i);
+        }
+    }
+
+    /**
+     * Generates a phrase of n cells with a mix of note starts, note sustains,
+     * and rests, drawing pitches from the given scale.
+     */
+    static Phrase randomPhrase(int n, Scale scale, Random random) {
+        float[] pitches = new float[n];
+        float[] dynamics = new float[n];
+        int[] cellTypes = new int[n];
+        for (int i = 0; i < n; i++) {
+            float r = random.nextFloat();
+            if (i == 0 || r < 0.6f) {
+                cellTypes[i] = Phrase.NOTE_START;
+            } else if (r < 0.85f && cellTypes[i - 1] != Phrase.REST) {
+                cellTypes[i] = Phrase.NOTE_SUSTAIN;
+            } else {
+                cellTypes[i] = Phrase.REST;
+            }
+
+            if (cellTypes[i] == Phrase.NOTE_SUSTAIN) {
+                pitches[i] = pitches[i - 1];
+                dynamics[i] = dynamics[i - 1];
+            } else if (cellTypes[i] == Phrase.NOTE_START) {
+                pitches[i] = scale.getNoteValue(random.nextInt(2 * scale.size())) + 60;
+                dynamics[i] = PhasesPApplet.defaultDynamic();
+            }
+        }
+        return new Phrase(pitches, dynamics, cellTypes, scale.getClassName(), scale.getName());
+    }
+}
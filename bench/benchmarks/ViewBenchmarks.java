@@ -0,0 +1,318 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import geom.Rect;
+import phasing.PhasesPApplet;
+import phasing.PlayerInfo;
+import phasing.PhraseReader;
+import phasing.PhraseReader.PhraseReaderListener;
+import phasing.Scale;
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PGraphics;
+import screens.Presenter;
+import util.FixedStepClock;
+import util.ModInt;
+import views.LiveScorer;
+import views.Musician;
+import views.PhaseShifter;
+import views.View;
+import views.ViewVariableInfo;
+
+/**
+ * Benchmarks how long it takes each View to update and draw a frame, and how
+ * much memory it allocates doing so. Runs without a display.
+ * 
+ * Each view draws to an offscreen PGraphics instead of a window, and is driven
+ * the way the Presenter drives it, except that time comes from a
+ * FixedStepClock that ticks at exactly 60 frames per second. The benchmark
+ * sweeps every combination of window size, phrase length, view type, and
+ * option values (every public ModInt of the view).
+ * 
+ * The offscreen PGraphics is a JAVA2D one, since an OpenGL one can't be made
+ * without a display. So the numbers are for the views' own work and for
+ * software rasterization, not for the GPU.
+ * 
+ * Run it from the project folder (so it can find data), with the jars in lib
+ * on the classpath. It takes the arguments "-wf 60 -f 240 regex", where -wf
+ * is the number of warmup frames, -f is the number of measured frames, and
+ * the regex selects which configurations to run. Every argument is optional.
+ * 
+ * @author James Morrow
+ *
+ */
+public class ViewBenchmarks implements ViewVariableInfo {
+    // window sizes, in pixels
+    private static final int[][] SIZES = new int[][] { { 800, 600 }, { 1280, 720 }, { 1920, 1080 } };
+
+    // phrase lengths, in cells
+    private static final int[] LENGTHS = new int[] { 8, 32, 128 };
+
+    private static final float FRAME_RATE = 60;
+
+    // for measuring allocation (null if the JVM can't)
+    private static final com.sun.management.ThreadMXBean threadBean = (ManagementFactory
+            .getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+                    ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    public static void main(String[] args) throws Exception {
+        int warmupFrames = 60, frames = 240;
+        String regex = "";
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-wf") && k + 1 < args.length) {
+                warmupFrames = Integer.parseInt(args[++k]);
+            } else if (args[k].equals("-f") && k + 1 < args.length) {
+                frames = Integer.parseInt(args[++k]);
+            } else {
+                regex = args[k];
+            }
+        }
+        Pattern filter = Pattern.compile(regex);
+
+        // never shown, only used as the thing the views draw through
+        PhasesPApplet pa = new PhasesPApplet();
+        loadFonts();
+        pa.currentScale = PhraseBenchmarks.loadScale(new File("data/scales/major scales.json"), 0);
+        PlayerInfo playerInfo = new PlayerInfo(true);
+
+        System.out.println(String.format("%-110s %8s %8s %8s %8s %12s", "Configuration", "p50 ms", "p90 ms",
+                "p99 ms", "max ms", "bytes/frame"));
+        for (int[] size : SIZES) {
+            pa.width = size[0];
+            pa.height = size[1];
+            pa.g = createOffscreenGraphics(pa, size[0], size[1]);
+            initColorScheme(pa);
+            Rect area = new Rect(pa.width / 2f, pa.height / 2f, pa.width, pa.height, PApplet.CENTER);
+
+            for (int n : LENGTHS) {
+                pa.currentPhrase = PhraseBenchmarks.randomPhrase(n, pa.currentScale, new Random(n));
+
+                for (int viewType = 0; viewType < numViewTypes; viewType++) {
+                    View prototype = createView(viewType, area, playerInfo, pa);
+                    List<Field> options = getOptions(prototype);
+                    int[] divisors = new int[options.size()];
+                    for (int i = 0; i < divisors.length; i++) {
+                        divisors[i] = ((ModInt) options.get(i).get(prototype)).getDivisor();
+                    }
+                    int[] values = new int[options.size()];
+                    do {
+                        View view = createView(viewType, area, playerInfo, pa);
+                        String name = view.getClass().getSimpleName() + " " + size[0] + "x" + size[1] + " n=" + n
+                                + " " + setOptions(view, options, values);
+                        if (filter.matcher(name).find()) {
+                            view.settingsChanged();
+                            System.out.println(run(name, view, pa, warmupFrames, frames));
+                        }
+                    } while (nextCombination(values, divisors));
+                }
+            }
+        }
+
+        System.exit(0);
+    }
+
+    /**************************
+     ***** Initialization *****
+     **************************/
+
+    /**
+     * Creates an offscreen PGraphics for the given PApplet to draw to. The
+     * image it draws into is made up front, since otherwise the PGraphics
+     * would ask the (nonexistent) screen for a compatible one.
+     */
+    private static PGraphics createOffscreenGraphics(PApplet pa, int width, int height) {
+        PGraphicsJava2D pg = new PGraphicsJava2D();
+        pg.setParent(pa);
+        pg.setPrimary(false);
+        pg.setSize(width, height);
+        pg.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        return pg;
+    }
+
+    /**
+     * Gives the given PhasesPApplet the color scheme it gives itself in
+     * setup(). initColorScheme() is private, so it's reached by reflection.
+     */
+    private static void initColorScheme(PhasesPApplet pa) throws ReflectiveOperationException {
+        Method initColorScheme = PhasesPApplet.class.getDeclaredMethod("initColorScheme");
+        initColorScheme.setAccessible(true);
+        initColorScheme.invoke(pa);
+    }
+
+    /**
+     * Loads the fonts the views use straight from the data folder, since a
+     * PApplet that was never run doesn't know where its data folder is.
+     */
+    private static void loadFonts() throws IOException {
+        PhasesPApplet.pfont12 = loadFont("data/DejaVuSans-12.vlw");
+        PhasesPApplet.pfont14 = loadFont("data/DejaVuSans-14.vlw");
+        PhasesPApplet.pfont18 = loadFont("data/DejaVuSans-18.vlw");
+        PhasesPApplet.pfont24 = loadFont("data/DejaVuSans-24.vlw");
+        PhasesPApplet.pfont64 = loadFont("data/DejaVuSans-64.vlw");
+        PhasesPApplet.musicFont = loadFont("data/MaestroWide-48.vlw");
+    }
+
+    private static PFont loadFont(String path) throws IOException {
+        try (InputStream in = new FileInputStream(path)) {
+            return new PFont(in);
+        }
+    }
+
+    /**
+     * Creates a view of the given type.
+     */
+    private static View createView(int viewType, Rect area, PlayerInfo playerInfo, PhasesPApplet pa) {
+        switch (viewType) {
+        case MUSICIAN:
+            return new Musician(area, 150, playerInfo, pa);
+        case PHASE_SHIFTER:
+            return new PhaseShifter(area, 150, playerInfo, pa);
+        default:
+            return new LiveScorer(area, 150, playerInfo, pa);
+        }
+    }
+
+    /*******************
+     ***** Options *****
+     *******************/
+
+    /**
+     * Gives the option variables of the given view: its public ModInt fields,
+     * sorted by name so that the order doesn't depend on the JVM.
+     */
+    private static List<Field> getOptions(View view) {
+        List<Field> options = new ArrayList<Field>();
+        for (Field field : view.getClass().getFields()) {
+            if (field.getType() == ModInt.class) {
+                options.add(field);
+            }
+        }
+        options.sort(Comparator.comparing(Field::getName));
+        return options;
+    }
+
+    /**
+     * Sets the given view's options to the given values.
+     * 
+     * @return A description of the values.
+     */
+    private static String setOptions(View view, List<Field> options, int[] values) throws IllegalAccessException {
+        StringBuilder s = new StringBuilder("{");
+        for (int i = 0; i < options.size(); i++) {
+            ModInt option = (ModInt) options.get(i).get(view);
+            option.setValue(values[i]);
+            s.append(options.get(i).getName()).append('=').append(values[i]);
+            if (i < options.size() - 1) {
+                s.append(", ");
+            }
+        }
+        return s.append('}').toString();
+    }
+
+    /**
+     * Advances the given option values to the next combination, like an
+     * odometer whose ith wheel counts up to the ith divisor.
+     * 
+     * @return False if every combination has been gone through.
+     */
+    private static boolean nextCombination(int[] values, int[] divisors) {
+        for (int i = values.length - 1; i >= 0; i--) {
+            values[i]++;
+            if (values[i] < divisors[i]) {
+                return true;
+            }
+            values[i] = 0;
+        }
+        return false;
+    }
+
+    /*******************
+     ***** Running *****
+     *******************/
+
+    /**
+     * Drives the given view for a number of frames, the way the Presenter
+     * does, and measures each frame.
+     * 
+     * @return A summary of the measurements.
+     */
+    private static String run(String name, final View view, PhasesPApplet pa, int warmupFrames, int frames) {
+        PhraseReaderListener listener = new PhraseReaderListener() {
+            public void noteEvent(PhraseReader reader) {
+                view.noteEvent(reader);
+            }
+        };
+        PhraseReader reader1 = new PhraseReader(pa.currentPhrase, Presenter.READER_ONE_ID, listener);
+        PhraseReader reader2 = new PhraseReader(pa.currentPhrase, Presenter.READER_TWO_ID, listener);
+        reader1.wakeUp(0);
+        reader2.wakeUp(0);
+        view.wakeUp(0, 0);
+
+        long[] frameNanos = new long[frames];
+        long allocatedBytes = 0;
+        FixedStepClock clock = new FixedStepClock(1000.0 / FRAME_RATE);
+        int prevMillis = clock.millis();
+        for (int frame = 1; frame <= warmupFrames + frames; frame++) {
+            clock.tick();
+            int millis = clock.millis();
+            int dt = millis - prevMillis;
+            prevMillis = millis;
+            float dNotept1 = pa.getBPMS1() * dt;
+            float dNotept2 = pa.getBPMS2() * dt;
+
+            boolean measured = frame > warmupFrames;
+            long startBytes = (measured) ? allocatedBytes() : 0;
+            long startNanos = System.nanoTime();
+
+            pa.g.beginDraw();
+            pa.g.background(255);
+            reader1.update(dNotept1);
+            reader2.update(dNotept2);
+            view.update(dt, dNotept1, dNotept2);
+            pa.g.endDraw();
+
+            if (measured) {
+                frameNanos[frame - warmupFrames - 1] = System.nanoTime() - startNanos;
+                allocatedBytes += allocatedBytes() - startBytes;
+            }
+        }
+
+        Arrays.sort(frameNanos);
+        return String.format("%-110s %8.3f %8.3f %8.3f %8.3f %12s", name, percentile(frameNanos, 0.5f),
+                percentile(frameNanos, 0.9f), percentile(frameNanos, 0.99f), frameNanos[frames - 1] / 1e6f,
+                (threadBean != null) ? String.valueOf(allocatedBytes / frames) : "n/a");
+    }
+
+    /**
+     * 
+     * @return The number of bytes allocated by this thread so far, or 0 if the
+     *         JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        return (threadBean != null) ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Gives the given percentile of the given sorted durations, in
+     * milliseconds.
+     */
+    private static float percentile(long[] sortedNanos, float p) {
+        int i = Math.min(sortedNanos.length - 1, (int) Math.ceil(p * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, i)] / 1e6f;
+    }
+}
@@ -1,6 +1,7 @@
 package geom;
 
 import processing.core.PApplet;
+import processing.core.PShape;
 
 /**
  * 
@@ -43,6 +44,17 @@ public class Circle extends Shape {
         pa.ellipse(x, y, radius, radius);
     }
 
+    @Override
+    public PShape toPShape(PApplet pa) {
+        // the ellipse mode is set only for building the shape, so the
+        // PApplet's style is left as it was
+        pa.pushStyle();
+        pa.ellipseMode(pa.RADIUS);
+        PShape s = pa.createShape(pa.ELLIPSE, x, y, radius, radius);
+        pa.popStyle();
+        return s;
+    }
+
     @Override
     public void translate(float dx, float dy) {
         x += dx;
@@ -1,19 +1,41 @@
 package geom;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import processing.core.PApplet;
+import processing.core.PShape;
 
 /**
  * Represents a curved rectangle, which is two circle arcs, joined by line
  * segments.
  * 
+ * The outline is stored as a packed array of coordinates (x0, y0, x1, y1,
+ * ...). Every curved rectangle with the same angular span and the same ratio
+ * of thickness to radius has the same outline, up to rotation and scale, so
+ * those outlines are tessellated once, as templates, and each curved
+ * rectangle just rotates and scales its template into place.
+ * 
  * @author James Morrow
  *
  */
 public class CurvedRect {
     private final static int minPointsPerTwoPi = 10;
     private final static int numPointsPerTwoPi = 50;
-    private final int numPointsPerArc;
-    private Point[] pts;
+
+    // templates, by angular span and thickness to radius ratio, both rounded
+    // to the nearest keyResolution (guarded by templates)
+    private final static float keyResolution = 1e-5f;
+    private final static int maxNumTemplates = 256;
+    private final static Map<Long, float[]> templates = new LinkedHashMap<Long, float[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+            return size() > maxNumTemplates;
+        }
+    };
+
+    // the outline, packed as (x0, y0, x1, y1, ...)
+    private final float[] xys;
 
     /**
      * 
@@ -23,58 +45,132 @@ public class CurvedRect {
      * @param theta2
      */
     public CurvedRect(float radius, float thickness, float theta1, float theta2) {
-        numPointsPerArc = PApplet.max(minPointsPerTwoPi,
-                (int) PApplet.map(theta2 - theta1, 0, PApplet.TWO_PI, 0, numPointsPerTwoPi));
-        pts = new Point[2 * numPointsPerArc];
+        float span = theta2 - theta1;
+        float[] template;
+        float scale;
+        if (radius != 0) {
+            template = getTemplate(span, thickness / radius);
+            scale = radius;
+        } else {
+            template = tessellate(span, -thickness / 2f, thickness / 2f);
+            scale = 1;
+        }
+
+        float cos = PApplet.cos(theta1) * scale;
+        float sin = PApplet.sin(theta1) * scale;
+        xys = new float[template.length];
+        for (int i = 0; i < xys.length; i += 2) {
+            xys[i] = template[i] * cos - template[i + 1] * sin;
+            xys[i + 1] = template[i] * sin + template[i + 1] * cos;
+        }
+    }
+
+    /**
+     * Copy constructor.
+     * 
+     * @param curvedRect
+     *            The CurvedRect to copy
+     */
+    public CurvedRect(CurvedRect curvedRect) {
+        this.xys = curvedRect.xys.clone();
+    }
+
+    /**
+     * Gives the outline of a curved rectangle with a radius of 1 that starts
+     * at an angle of 0, tessellating it if it isn't already cached.
+     * 
+     * @param span
+     *            The angle the curved rectangle spans.
+     * @param thicknessRatio
+     *            The ratio of the thickness of the curved rectangle to its
+     *            radius.
+     * @return The outline, packed as (x0, y0, x1, y1, ...). It must not be
+     *         modified.
+     */
+    private static float[] getTemplate(float span, float thicknessRatio) {
+        Long key = ((long) Math.round(span / keyResolution) << 32)
+                | (Math.round(thicknessRatio / keyResolution) & 0xFFFFFFFFL);
+        synchronized (templates) {
+            float[] template = templates.get(key);
+            if (template == null) {
+                template = tessellate(span, 1 - thicknessRatio / 2f, 1 + thicknessRatio / 2f);
+                templates.put(key, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * Computes the outline of a curved rectangle that starts at an angle of 0.
+     * 
+     * @param span
+     *            The angle the curved rectangle spans.
+     * @param smallRadius
+     *            The radius of the inner arc.
+     * @param largeRadius
+     *            The radius of the outer arc.
+     * @return The outline, packed as (x0, y0, x1, y1, ...).
+     */
+    private static float[] tessellate(float span, float smallRadius, float largeRadius) {
+        int numPointsPerArc = PApplet.max(minPointsPerTwoPi,
+                (int) PApplet.map(span, 0, PApplet.TWO_PI, 0, numPointsPerTwoPi));
+        float[] xys = new float[4 * numPointsPerArc];
         int i = 0;
 
         // arc 1
-        float theta = theta1;
-        float dTheta = (theta2 - theta1) / numPointsPerArc;
-        float smallRadius = radius - thickness / 2f;
+        float theta = 0;
+        float dTheta = span / numPointsPerArc;
         for (int j = 0; j < numPointsPerArc - 1; j++) {
-            pts[i++] = new Point(PApplet.cos(theta) * smallRadius, PApplet.sin(theta) * smallRadius);
+            xys[i++] = PApplet.cos(theta) * smallRadius;
+            xys[i++] = PApplet.sin(theta) * smallRadius;
             theta += dTheta;
         }
 
-        theta = theta2;
-        pts[i++] = new Point(PApplet.cos(theta) * smallRadius, PApplet.sin(theta) * smallRadius);
+        theta = span;
+        xys[i++] = PApplet.cos(theta) * smallRadius;
+        xys[i++] = PApplet.sin(theta) * smallRadius;
 
         // arc 2
-        float largeRadius = radius + thickness / 2f;
         for (int j = 0; j < numPointsPerArc - 1; j++) {
-            pts[i++] = new Point(PApplet.cos(theta) * largeRadius, PApplet.sin(theta) * largeRadius);
+            xys[i++] = PApplet.cos(theta) * largeRadius;
+            xys[i++] = PApplet.sin(theta) * largeRadius;
             theta -= dTheta;
         }
 
-        theta = theta1;
-        pts[i++] = new Point(PApplet.cos(theta) * largeRadius, PApplet.sin(theta) * largeRadius);
+        theta = 0;
+        xys[i++] = PApplet.cos(theta) * largeRadius;
+        xys[i++] = PApplet.sin(theta) * largeRadius;
+
+        return xys;
     }
 
     /**
-     * Copy constructor.
+     * Draws the shape to the given PApplet instance.
      * 
-     * @param curvedRect
-     *            The CurvedRect to copy
+     * @param pa
      */
-    public CurvedRect(CurvedRect curvedRect) {
-        this.numPointsPerArc = curvedRect.numPointsPerArc;
-        this.pts = new Point[curvedRect.pts.length];
-        for (int i = 0; i < this.pts.length; i++) {
-            this.pts[i] = new Point(curvedRect.pts[i]);
+    public void display(PApplet pa) {
+        pa.beginShape();
+        for (int i = 0; i < xys.length; i += 2) {
+            pa.vertex(xys[i], xys[i + 1]);
         }
+        pa.endShape(pa.CLOSE);
     }
 
     /**
-     * Draws the shape to the given PApplet instance.
+     * Creates retained geometry of the shape.
      * 
      * @param pa
+     *            The PApplet that creates the geometry.
+     * @return The geometry.
      */
-    public void display(PApplet pa) {
-        pa.beginShape();
-        for (int i = 0; i < pts.length; i++) {
-            pa.vertex(pts[i].x, pts[i].y);
+    public PShape toPShape(PApplet pa) {
+        PShape s = pa.createShape();
+        s.beginShape();
+        for (int i = 0; i < xys.length; i += 2) {
+            s.vertex(xys[i], xys[i + 1]);
         }
-        pa.endShape(pa.CLOSE);
+        s.endShape(pa.CLOSE);
+        return s;
     }
-}
\ No newline at end of file
+}
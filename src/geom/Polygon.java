@@ -2,16 +2,20 @@ package geom;
 
 import processing.core.PApplet;
 import processing.core.PGraphics;
+import processing.core.PShape;
 
 /**
+ * A polygon, stored as parallel arrays of the x-coordinates and the
+ * y-coordinates of its vertices, along with a cached bounding box. Transforms
+ * are applied to the arrays in place.
  * 
  * @author James Morrow
  *
  */
 public class Polygon extends Shape {
-    private Point[] pts;
-    private Point cen;
-    private float width, height;
+    private float[] xs, ys;
+    // bounding box:
+    private float minX, minY, maxX, maxY;
 
     /**
      * Constructs a regular polygon inscribed in a circle.
@@ -62,12 +66,13 @@ public class Polygon extends Shape {
      *            The angle of the first vertex
      */
     public Polygon(float cenx, float ceny, float half_width, float half_height, int numVertices, float startAngle) {
-        cen = new Point(cenx, ceny);
-        pts = new Point[numVertices];
+        xs = new float[numVertices];
+        ys = new float[numVertices];
         float angle = startAngle;
         float changeInAngle = PApplet.TWO_PI / numVertices;
-        for (int i = 0; i < pts.length; i++) {
-            pts[i] = new Point(cenx + half_width * PApplet.cos(angle), ceny + half_height * PApplet.sin(angle));
+        for (int i = 0; i < numVertices; i++) {
+            xs[i] = cenx + half_width * PApplet.cos(angle);
+            ys[i] = ceny + half_height * PApplet.sin(angle);
             angle += changeInAngle;
         }
         computeDimensions();
@@ -88,11 +93,12 @@ public class Polygon extends Shape {
      *            The sequence of angles
      */
     public Polygon(float cenx, float ceny, float half_width, float half_height, float[] angles) {
-        cen = new Point(cenx, ceny);
         int n = angles.length;
-        pts = new Point[n];
+        xs = new float[n];
+        ys = new float[n];
         for (int i = 0; i < n; i++) {
-            pts[i] = new Point(cenx + half_width * PApplet.cos(angles[i]), ceny + half_height * PApplet.sin(angles[i]));
+            xs[i] = cenx + half_width * PApplet.cos(angles[i]);
+            ys[i] = ceny + half_height * PApplet.sin(angles[i]);
         }
         computeDimensions();
     }
@@ -105,9 +111,11 @@ public class Polygon extends Shape {
      *            x-coordinates and odd indices should give y-coordinates.
      */
     public Polygon(float[] coords) {
-        pts = new Point[coords.length / 2];
-        for (int i = 0; i < pts.length; i++) {
-            pts[i] = new Point(coords[i * 2], coords[i * 2 + 1]);
+        xs = new float[coords.length / 2];
+        ys = new float[coords.length / 2];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = coords[i * 2];
+            ys[i] = coords[i * 2 + 1];
         }
         computeDimensions();
     }
@@ -119,7 +127,12 @@ public class Polygon extends Shape {
      *            The points
      */
     public Polygon(Point[] pts) {
-        this.pts = pts;
+        xs = new float[pts.length];
+        ys = new float[pts.length];
+        for (int i = 0; i < pts.length; i++) {
+            xs[i] = pts[i].x;
+            ys[i] = pts[i].y;
+        }
         computeDimensions();
     }
 
@@ -130,38 +143,29 @@ public class Polygon extends Shape {
      *            Polygon to copy
      */
     public Polygon(Polygon poly) {
-        pts = new Point[poly.pts.length];
-        for (int i = 0; i < poly.pts.length; i++) {
-            pts[i] = new Point(poly.pts[i]);
-        }
-        this.width = poly.width;
-        this.height = poly.height;
+        this.xs = poly.xs.clone();
+        this.ys = poly.ys.clone();
+        this.minX = poly.minX;
+        this.minY = poly.minY;
+        this.maxX = poly.maxX;
+        this.maxY = poly.maxY;
     }
 
     /**
-     * Computes the dependent state of the Polygon. That is, the width, height,
-     * and center.
+     * Computes the dependent state of the Polygon. That is, its bounding box.
      */
     private void computeDimensions() {
-        float minX = Float.MAX_VALUE;
-        float maxX = Float.MIN_VALUE;
-        float minY = Float.MAX_VALUE;
-        float maxY = Float.MIN_VALUE;
-
-        for (Point pt : pts) {
-            if (pt.x < minX)
-                minX = pt.x;
-            if (pt.x > maxX)
-                maxX = pt.x;
-            if (pt.y < minY)
-                minY = pt.y;
-            if (pt.y > maxY)
-                maxY = pt.y;
-        }
+        minX = Float.POSITIVE_INFINITY;
+        maxX = Float.NEGATIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+        maxY = Float.NEGATIVE_INFINITY;
 
-        this.width = maxX - minX;
-        this.height = maxY - minY;
-        this.cen = new Point((maxX - minX) / 2f, (maxY - minY) / 2f);
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
     }
 
     /**
@@ -184,49 +188,140 @@ public class Polygon extends Shape {
      */
     public static void drawPolygon(float cenx, float ceny, float half_width, float half_height, int numVertices,
             float startAngle, PApplet pa) {
+        drawPolygon(cenx, ceny, half_width, half_height, numVertices, startAngle, pa.g);
+    }
+
+    /**
+     * Draws a polygon inscribed in an ellipse.
+     * 
+     * @param cenx
+     *            The center x-coordinate of the ellipse
+     * @param ceny
+     *            The center y-coordinate of the ellipse
+     * @param half_width
+     *            Half the width of the ellipse
+     * @param half_height
+     *            Half the height of the ellipse
+     * @param numVertices
+     *            The number of vertices in the polygon
+     * @param startAngle
+     *            The angle of the first vertex
+     * @param g
+     *            The PGraphics instance to draw to
+     */
+    public static void drawPolygon(float cenx, float ceny, float half_width, float half_height, int numVertices,
+            float startAngle, PGraphics g) {
         float theta = startAngle;
-        float dTheta = pa.TWO_PI / numVertices;
-        pa.beginShape();
+        float dTheta = PApplet.TWO_PI / numVertices;
+        g.beginShape();
         for (int i = 0; i < numVertices; i++) {
-            pa.vertex(cenx + half_width * pa.cos(theta), ceny + half_height * pa.sin(theta));
+            g.vertex(cenx + half_width * PApplet.cos(theta), ceny + half_height * PApplet.sin(theta));
             theta += dTheta;
         }
-        pa.endShape(pa.CLOSE);
+        g.endShape(PApplet.CLOSE);
     }
 
     @Override
     public void display(PApplet pa) {
         pa.beginShape();
-        for (int i = 0; i < pts.length; i++) {
-            pa.vertex(pts[i].x, pts[i].y);
+        for (int i = 0; i < xs.length; i++) {
+            pa.vertex(xs[i], ys[i]);
         }
         pa.endShape(pa.CLOSE);
     }
 
+    @Override
+    public PShape toPShape(PApplet pa) {
+        PShape s = pa.createShape();
+        s.beginShape();
+        for (int i = 0; i < xs.length; i++) {
+            s.vertex(xs[i], ys[i]);
+        }
+        s.endShape(pa.CLOSE);
+        return s;
+    }
+
     @Override
     public void translate(float dx, float dy) {
-        for (Point pt : pts) {
-            pt.x += dx;
-            pt.y += dy;
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] += dx;
+            ys[i] += dy;
+        }
+        minX += dx;
+        maxX += dx;
+        minY += dy;
+        maxY += dy;
+    }
+
+    /**
+     * Applies the affine transformation that maps (x, y) to (a*x + b*y + c,
+     * d*x + e*y + f) to every vertex of the polygon. The coefficients are in
+     * the same order as those of a PMatrix2D.
+     * 
+     * @param a
+     * @param b
+     * @param c
+     * @param d
+     * @param e
+     * @param f
+     */
+    public void transform(float a, float b, float c, float d, float e, float f) {
+        for (int i = 0; i < xs.length; i++) {
+            float x = xs[i];
+            float y = ys[i];
+            xs[i] = a * x + b * y + c;
+            ys[i] = d * x + e * y + f;
         }
+        computeDimensions();
+    }
+
+    /**
+     * Scales the polygon about its center.
+     * 
+     * @param sx
+     *            The amount to scale the polygon by horizontally
+     * @param sy
+     *            The amount to scale the polygon by vertically
+     */
+    public void scale(float sx, float sy) {
+        float cenx = getCenx();
+        float ceny = getCeny();
+        transform(sx, 0, cenx - sx * cenx, 0, sy, ceny - sy * ceny);
     }
 
     /**
      * 
-     * @return The center of the polygon
+     * @return The center of the polygon's bounding box
      */
     public Point getCenter() {
-        return new Point(cen);
+        return new Point(getCenx(), getCeny());
+    }
+
+    /**
+     * 
+     * @return The center x-coordinate of the polygon's bounding box
+     */
+    public float getCenx() {
+        return (minX + maxX) / 2f;
+    }
+
+    /**
+     * 
+     * @return The center y-coordinate of the polygon's bounding box
+     */
+    public float getCeny() {
+        return (minY + maxY) / 2f;
     }
 
     /**
-     * Sets the center of the polygon, thereby translating the polygon.
+     * Sets the center of the polygon's bounding box, thereby translating the
+     * polygon.
      * 
      * @param x
      * @param y
      */
     public void setCenter(float x, float y) {
-        translate(x - cen.x, y - cen.y);
+        translate(x - getCenx(), y - getCeny());
     }
 
     /**
@@ -234,7 +329,7 @@ public class Polygon extends Shape {
      * @return The width of the polygon
      */
     public float getWidth() {
-        return width;
+        return maxX - minX;
     }
 
     /**
@@ -242,7 +337,35 @@ public class Polygon extends Shape {
      * @return The height of the polygon
      */
     public float getHeight() {
-        return height;
+        return maxY - minY;
+    }
+
+    /**
+     * 
+     * @return The number of vertices of the polygon
+     */
+    public int getNumVertices() {
+        return xs.length;
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the vertex
+     * @return The x-coordinate of the ith vertex
+     */
+    public float getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the vertex
+     * @return The y-coordinate of the ith vertex
+     */
+    public float getY(int i) {
+        return ys[i];
     }
 
     @Override
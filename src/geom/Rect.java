@@ -1,6 +1,7 @@
 package geom;
 
 import processing.core.PApplet;
+import processing.core.PShape;
 
 /**
  * Represents a rectangle.
@@ -80,6 +81,18 @@ public class Rect extends Shape {
         pa.rect(x, y, width, height);
     }
 
+    @Override
+    public PShape toPShape(PApplet pa) {
+        PShape s = pa.createShape();
+        s.beginShape();
+        s.vertex(getX1(), getY1());
+        s.vertex(getX2(), getY1());
+        s.vertex(getX2(), getY2());
+        s.vertex(getX1(), getY2());
+        s.endShape(pa.CLOSE);
+        return s;
+    }
+
     /**
      *
      * @param x
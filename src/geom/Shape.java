@@ -1,6 +1,7 @@
 package geom;
 
 import processing.core.PApplet;
+import processing.core.PShape;
 
 /**
  * A pretty bare bones shape interface.
@@ -16,6 +17,17 @@ public abstract class Shape {
      */
     public abstract void display(PApplet pa);
 
+    /**
+     * Builds a PShape with the same geometry as the shape, which can be drawn
+     * over and over without submitting its vertices again. The PShape doesn't
+     * follow the shape if the shape changes afterward.
+     * 
+     * @param pa
+     *            The PApplet instance that creates the PShape
+     * @return The PShape
+     */
+    public abstract PShape toPShape(PApplet pa);
+
     /**
      * Shifts the shape by (dx, dy)
      * 
@@ -3,6 +3,7 @@ package icons;
 import geom.Point;
 import phasing.PhasesPApplet;
 import processing.core.PApplet;
+import util.SineTable;
 
 /**
  * 
@@ -32,7 +33,7 @@ public class SineWaveIcon implements Icon {
             float theta = 0;
             float dTheta = pa.TWO_PI / numPts;
             for (int i = 0; i < numPts; i++) {
-                pa.point(ptx, y + amp * pa.sin(theta));
+                pa.point(ptx, y + amp * SineTable.DEFAULT.sin(theta));
                 theta += dTheta;
                 ptx += dx;
             }
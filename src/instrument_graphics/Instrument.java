@@ -17,6 +17,9 @@ public interface Instrument {
      * will be wrapped into range before being used. That way, the method always
      * returns a shape and never returns a null pointer.
      * 
+     * The shape is the instrument's own key, shared with everything else that
+     * asks for the same pitch, so it must not be modified.
+     * 
      * @param pitchValue
      *            The integer value of the pitch.
      * @return The shape associated with the given pitch value.
@@ -15,7 +15,9 @@ import processing.core.PApplet;
  */
 public class InstrumentPlayer {
     private Phrase phrase;
-    private Shape[] keyCopies;
+    private Instrument instrument;
+    // what to add to a pitch in the phrase to get a pitch on the instrument:
+    private int pitchOffset;
     private Shape activeKey;
 
     /**
@@ -26,7 +28,6 @@ public class InstrumentPlayer {
      *            The phrase to animate it with.
      */
     public InstrumentPlayer(Instrument instrument, Phrase phrase) {
-        keyCopies = new Shape[phrase.getNumNotes()];
         this.phrase = phrase;
         setInstrument(instrument);
 
@@ -34,7 +35,7 @@ public class InstrumentPlayer {
     }
 
     /**
-     * Animates its instrument.
+     * Animates its instrument, by drawing the active key over it.
      * 
      * @param pa
      *            The PApplet to which the instrument is drawn.
@@ -48,44 +49,30 @@ public class InstrumentPlayer {
     // callback:
     public void setActiveKey(PhraseReader reader) {
         int i = reader.getNoteIndex();
-        activeKey = (phrase.getSCDynamic(i) > 0) ? keyCopies[i] : null;
+        activeKey = (phrase.getSCDynamic(i) > 0) ? instrument.pitchToShape(phrase.getSCPitch(i) + pitchOffset)
+                : null;
     }
 
     /**
-     * Returns the index of the first occurence of x in xs.
-     * 
-     * @param x
-     * @param xs
-     * @return The index of the first occurence of x in xs.
-     */
-    private static int indexOf(Shape x, Shape[] xs) {
-        for (int i = 0; i < xs.length; i++) {
-            if (xs[i] == x) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    /**
-     * Sets the instrument the InstrumentPlayer plays.
+     * Sets the instrument the InstrumentPlayer plays. The keys aren't copied;
+     * the instrument's own keys are looked up by pitch as notes are played.
      * 
      * @param instrument
      *            The instrument for the InstrumentPlayer to play.
      */
     public void setInstrument(Instrument instrument) {
-        for (int i = 0; i < keyCopies.length; i++) {
-            int minPhraseOctaveNum = (int) (phrase.minPitch() / 12);
-            int phraseSpan = (int) (phrase.maxPitch() - phrase.minPitch());
-            int instrumentSpan = instrument.getNumOctaves() * 12;
-            int spanDifferenceInNotes = instrumentSpan - phraseSpan;
-            int spanDifferenceInOctaves = spanDifferenceInNotes / 12;
-            int instrumentOffset = 12 * (spanDifferenceInOctaves / 2);
-            if (instrumentOffset < 0) {
-                instrumentOffset = 0;
-            }
-            int pitch = phrase.getSCPitch(i) - 12 * minPhraseOctaveNum + instrumentOffset;
-            keyCopies[i] = instrument.pitchToShape(pitch);
+        this.instrument = instrument;
+
+        int minPhraseOctaveNum = (int) (phrase.minPitch() / 12);
+        int phraseSpan = (int) (phrase.maxPitch() - phrase.minPitch());
+        int instrumentSpan = instrument.getNumOctaves() * 12;
+        int spanDifferenceInNotes = instrumentSpan - phraseSpan;
+        int spanDifferenceInOctaves = spanDifferenceInNotes / 12;
+        int instrumentOffset = 12 * (spanDifferenceInOctaves / 2);
+        if (instrumentOffset < 0) {
+            instrumentOffset = 0;
         }
+        pitchOffset = instrumentOffset - 12 * minPhraseOctaveNum;
+        activeKey = null;
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import geom.Rect;
 import geom.Shape;
 import phasing.PhasesPApplet;
 import processing.core.PApplet;
+import processing.core.PShape;
 
 /**
  * A graphical representation of a marimba.
@@ -17,6 +18,10 @@ public class Marimba implements Instrument {
     private int numBars;
     private Shape[] bars;
 
+    // the bars as retained geometry (null until the marimba is displayed
+    // after its bars change)
+    private PShape barsShape;
+
     /**************************
      ***** Initialization *****
      **************************/
@@ -50,6 +55,23 @@ public class Marimba implements Instrument {
         int widthBetweenBars = PApplet.floor(0.25f * dx);
         float unitBarHeight = r.getHeight() / 2f;
         initBars(r.getX1(), r.getY1() + 0.4f * r.getHeight(), barWidth, unitBarHeight, widthBetweenBars);
+        barsShape = null;
+    }
+
+    /**
+     * Builds the retained geometry of the bars. The geometry doesn't have a
+     * style of its own, so it is drawn with whatever stroke weight the PApplet
+     * has at the time.
+     * 
+     * @param pa
+     *            The PApplet that creates the geometry.
+     */
+    private void initBarsShape(PApplet pa) {
+        barsShape = pa.createShape(PApplet.GROUP);
+        for (Shape s : bars) {
+            barsShape.addChild(s.toPShape(pa));
+        }
+        barsShape.disableStyle();
     }
 
     /**
@@ -143,16 +165,17 @@ public class Marimba implements Instrument {
     @Override
     public Shape pitchToShape(int index) {
         index = PhasesPApplet.remainder(index, bars.length);
-        return bars[index].clone();
+        return bars[index];
     }
 
     @Override
     public void display(PApplet pa) {
+        if (barsShape == null) {
+            initBarsShape(pa);
+        }
         pa.stroke(100);
         pa.noFill();
-        for (Shape s : bars) {
-            s.display(pa);
-        }
+        pa.shape(barsShape);
     }
 
     /**********************************
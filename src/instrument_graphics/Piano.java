@@ -6,6 +6,7 @@ import geom.Rect;
 import geom.Shape;
 import phasing.PhasesPApplet;
 import processing.core.PApplet;
+import processing.core.PShape;
 
 /**
  * A graphical representation of a piano.
@@ -23,6 +24,10 @@ public class Piano extends Rect implements Instrument {
     private Shape[] keys;
     private int blackKeyColor;
 
+    // the keys as retained geometry (null until the piano is displayed after
+    // its keys change)
+    private PShape whiteKeysShape, blackKeysShape;
+
     /**************************
      ***** Initialization *****
      **************************/
@@ -154,6 +159,31 @@ public class Piano extends Rect implements Instrument {
                 y1 += whiteKeyHeight;
             }
         }
+
+        whiteKeysShape = null;
+        blackKeysShape = null;
+    }
+
+    /**
+     * Builds the retained geometry of the white keys and of the black keys.
+     * The geometry doesn't have a style of its own, so it is drawn with
+     * whatever stroke weight the PApplet has at the time.
+     * 
+     * @param pa
+     *            The PApplet that creates the geometry.
+     */
+    private void initKeyShapes(PApplet pa) {
+        whiteKeysShape = pa.createShape(PApplet.GROUP);
+        for (int i = 0; i < whiteKeys.length; i++) {
+            whiteKeysShape.addChild(whiteKeys[i].toPShape(pa));
+        }
+        whiteKeysShape.disableStyle();
+
+        blackKeysShape = pa.createShape(PApplet.GROUP);
+        for (int i = 0; i < blackKeys.length; i++) {
+            blackKeysShape.addChild(blackKeys[i].toPShape(pa));
+        }
+        blackKeysShape.disableStyle();
     }
 
     /********************************
@@ -162,6 +192,9 @@ public class Piano extends Rect implements Instrument {
 
     @Override
     public void display(PApplet pa) {
+        if (whiteKeysShape == null || blackKeysShape == null) {
+            initKeyShapes(pa);
+        }
         displayWhiteKeys(pa);
         drawBlackKeys(pa);
     }
@@ -175,9 +208,7 @@ public class Piano extends Rect implements Instrument {
     private void displayWhiteKeys(PApplet pa) {
         pa.stroke(100);
         pa.fill(255);
-        for (int i = 0; i < whiteKeys.length; i++) {
-            whiteKeys[i].display(pa);
-        }
+        pa.shape(whiteKeysShape);
     }
 
     /**
@@ -189,9 +220,7 @@ public class Piano extends Rect implements Instrument {
     private void drawBlackKeys(PApplet pa) {
         pa.stroke(100);
         pa.fill(blackKeyColor);
-        for (int i = 0; i < blackKeys.length; i++) {
-            blackKeys[i].display(pa);
-        }
+        pa.shape(blackKeysShape);
     }
 
     /**
@@ -202,7 +231,7 @@ public class Piano extends Rect implements Instrument {
      */
     public Shape pitchToShape(int i) {
         i = PhasesPApplet.remainder(i, keys.length);
-        return keys[i].clone();
+        return keys[i];
     }
 
     /*******************************
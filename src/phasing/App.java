@@ -1,6 +1,10 @@
 package phasing;
 
 import processing.core.PApplet;
+import util.AcceleratedClock;
+import util.Clock;
+import util.FixedStepClock;
+import util.RealClock;
 
 /**
  * 
@@ -9,6 +13,7 @@ import processing.core.PApplet;
  */
 public class App {
     public static void main(String[] args) {
+        Clock clock = new RealClock();
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("NO_CURSOR")) {
                 PhasesPApplet.hideCursor = true;
@@ -16,6 +21,17 @@ public class App {
             if (args[i].equals("DEBUG")) {
                 PhasesPApplet.showAnimationError = true;
             }
+            if (args[i].equals("FIXED_STEP")) {
+                clock = new FixedStepClock(1000.0 / 60.0);
+            }
+            if (args[i].startsWith("ACCELERATED=")) {
+                try {
+                    double rate = Double.parseDouble(args[i].substring("ACCELERATED=".length()));
+                    clock = new AcceleratedClock(rate);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Ignoring " + args[i] + ": " + e.getMessage());
+                }
+            }
         }
 
         if (args.length >= 2) {
@@ -26,6 +42,6 @@ public class App {
             } catch (NumberFormatException e) {
             }
         }
-        PApplet.main("phasing.PhasesPApplet");
+        PApplet.runSketch(new String[] { "phasing.PhasesPApplet" }, new PhasesPApplet(clock));
     }
 }
\ No newline at end of file
@@ -0,0 +1,374 @@
+package phasing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import util.SaveService;
+
+/**
+ * Exports a full cycle of a phasing process as a Standard MIDI File.
+ * 
+ * A cycle starts with both players at the beginning of the phrase and ends
+ * the next time they are both at the beginning together. The tempos are taken
+ * to the nearest thousandth of a beat per minute, which makes their ratio a
+ * ratio of integers, bpm1 / bpm2 = p1 / p2 in lowest terms. Then the cycle is
+ * exactly p1 repetitions of the phrase by the first player and p2 repetitions
+ * by the second.
+ * 
+ * The file has a tempo track and a track for each player. Each track is
+ * streamed straight to the file, one note at a time, and the time of every
+ * note is computed from its repetition and onset rather than accumulated, so
+ * long cycles neither use a lot of memory nor drift. The file is written to a
+ * temporary file first, which then replaces the actual file.
+ * 
+ * Since the tempos can be set to any value, a cycle can be very long (at 60
+ * and 61.337 beats per minute, it is 60000 repetitions of the phrase). So a
+ * phrase whose cycle lasts longer than MAX_CYCLE_SECONDS isn't exported.
+ * getCycleSeconds() tells how long a phrase's cycle lasts beforehand.
+ * 
+ * @author James Morrow
+ *
+ */
+public class MidiExporter {
+    public static final int TICKS_PER_BEAT = 960;
+    private static final int TEMPO_RESOLUTION = 1000;
+    public static final double MAX_CYCLE_SECONDS = 60 * 60;
+
+    // tempos, in thousandths of a beat per minute
+    private final long tempo1;
+    private final long repetitions1, repetitions2;
+
+    // instrument
+    private final int program;
+
+    /**
+     * 
+     * @param bpm1
+     *            The tempo of the first player, in beats per minute.
+     * @param bpm2
+     *            The tempo of the second player, in beats per minute.
+     * @param program
+     *            The General MIDI program number [0-127] of the instrument
+     *            both players play.
+     */
+    public MidiExporter(float bpm1, float bpm2, int program) {
+        long tempo1 = Math.round(bpm1 * (double) TEMPO_RESOLUTION);
+        long tempo2 = Math.round(bpm2 * (double) TEMPO_RESOLUTION);
+        if (tempo1 <= 0 || tempo2 <= 0) {
+            throw new IllegalArgumentException("Tempos must be positive.");
+        }
+        long gcd = gcd(tempo1, tempo2);
+        this.tempo1 = tempo1;
+        this.repetitions1 = tempo1 / gcd;
+        this.repetitions2 = tempo2 / gcd;
+        this.program = program;
+    }
+
+    /**
+     * 
+     * @return The number of times the first player plays the phrase in a
+     *         cycle.
+     */
+    public long getRepetitions1() {
+        return repetitions1;
+    }
+
+    /**
+     * 
+     * @return The number of times the second player plays the phrase in a
+     *         cycle.
+     */
+    public long getRepetitions2() {
+        return repetitions2;
+    }
+
+    /**
+     * 
+     * @param snapshot
+     *            A snapshot of the phrase.
+     * @return How long a full cycle of the given phrase is, in terms of the
+     *         first player's beats.
+     */
+    public double getCycleBeats(PhraseSnapshot snapshot) {
+        return repetitions1 * (double) snapshot.getTotalDuration();
+    }
+
+    /**
+     * 
+     * @param snapshot
+     *            A snapshot of the phrase.
+     * @return How long a full cycle of the given phrase lasts, in seconds.
+     */
+    public double getCycleSeconds(PhraseSnapshot snapshot) {
+        return getCycleBeats(snapshot) * 60 * TEMPO_RESOLUTION / tempo1;
+    }
+
+    /*******************
+     ***** Writing *****
+     *******************/
+
+    /**
+     * Writes a full cycle of the given phrase to the given file.
+     * 
+     * @param snapshot
+     *            A snapshot of the phrase.
+     * @param file
+     *            The file.
+     * @throws IOException
+     *             If the file can't be written.
+     * @throws IllegalArgumentException
+     *             If the phrase is empty or its cycle lasts longer than
+     *             MAX_CYCLE_SECONDS.
+     */
+    public void write(PhraseSnapshot snapshot, File file) throws IOException {
+        if (snapshot.getNumNotes() == 0 || snapshot.getTotalDuration() <= 0) {
+            throw new IllegalArgumentException("Can't export an empty phrase.");
+        }
+        double cycleSeconds = getCycleSeconds(snapshot);
+        if (cycleSeconds > MAX_CYCLE_SECONDS) {
+            throw new IllegalArgumentException(String.format(
+                    "A cycle lasts %.0f seconds (%d and %d repetitions of the phrase), "
+                            + "which is longer than the maximum of %.0f seconds.",
+                    cycleSeconds, repetitions1, repetitions2, MAX_CYCLE_SECONDS));
+        }
+        long endTick = toTick(getCycleBeats(snapshot));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+                FileChannel channel = fileOut.getChannel();
+                BufferedOutputStream out = new BufferedOutputStream(fileOut, 1 << 16);
+
+                // header: format 1, 3 tracks
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeBytes("MThd");
+                header.writeInt(6);
+                header.writeShort(1);
+                header.writeShort(3);
+                header.writeShort(TICKS_PER_BEAT);
+
+                // tempo track
+                Track track = startTrack(out, channel);
+                int microsPerBeat = (int) Math.round(60e6 * TEMPO_RESOLUTION / tempo1);
+                track.event(0, 0xFF, 0x51, 0x03, (microsPerBeat >> 16) & 0xFF, (microsPerBeat >> 8) & 0xFF,
+                        microsPerBeat & 0xFF);
+                endTrack(track, endTick, channel);
+
+                // players (the second player's beats are scaled to the first
+                // player's tempo)
+                track = startTrack(out, channel);
+                writePlayer(track, snapshot, 0, repetitions1, 1);
+                endTrack(track, endTick, channel);
+
+                track = startTrack(out, channel);
+                writePlayer(track, snapshot, 1, repetitions2, (double) repetitions1 / repetitions2);
+                endTrack(track, endTick, channel);
+
+                fileOut.getFD().sync();
+            }
+            SaveService.replace(file, temp);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a full cycle of each of the given phrases to the corresponding
+     * file, several at a time, in parallel. A phrase that fails to be written
+     * doesn't stop the others.
+     * 
+     * @param snapshots
+     *            Snapshots of the phrases.
+     * @param files
+     *            The files, in the same order.
+     * @return The number of phrases that failed to be written.
+     */
+    public int writeAll(final List<PhraseSnapshot> snapshots, final List<File> files) {
+        return (int) IntStream.range(0, snapshots.size()).parallel().filter(i -> {
+            try {
+                write(snapshots.get(i), files.get(i));
+                return false;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Couldn't export " + files.get(i) + ": " + e);
+                return true;
+            }
+        }).count();
+    }
+
+    /**
+     * Writes every note one player plays in a cycle.
+     * 
+     * @param track
+     *            The player's track.
+     * @param snapshot
+     *            A snapshot of the phrase.
+     * @param channel
+     *            The MIDI channel of the player.
+     * @param repetitions
+     *            The number of times the player plays the phrase.
+     * @param beatScale
+     *            The number of the first player's beats in one of this
+     *            player's beats.
+     */
+    private void writePlayer(Track track, PhraseSnapshot snapshot, int channel, long repetitions, double beatScale)
+            throws IOException {
+        track.event(0, 0xC0 | channel, program & 0x7F);
+
+        // the tick at which each pitch is to be released, or -1
+        long[] noteOffTicks = new long[128];
+        Arrays.fill(noteOffTicks, -1);
+
+        int pan = -1;
+        double totalDuration = snapshot.getTotalDuration();
+        for (long rep = 0; rep < repetitions; rep++) {
+            for (int i = 0; i < snapshot.getNumNotes(); i++) {
+                if (snapshot.isRest(i)) {
+                    continue;
+                }
+                double onset = (rep * totalDuration + snapshot.getOnset(i)) * beatScale;
+                double duration = snapshot.getDuration(i) * snapshot.getArticulation(i) * beatScale;
+                long onTick = toTick(onset);
+                long offTick = Math.max(onTick, toTick(onset + duration));
+                int pitch = constrain(snapshot.getPitch(i), 0, 127);
+
+                releaseNotes(track, channel, noteOffTicks, onTick);
+                if (noteOffTicks[pitch] != -1) {
+                    // the same pitch is still sounding, so cut it short
+                    track.event(onTick, 0x80 | channel, pitch, 0);
+                }
+
+                int notePan = constrain(Math.round(snapshot.getPan(i)), 0, 127);
+                if (notePan != pan) {
+                    track.event(onTick, 0xB0 | channel, 10, notePan);
+                    pan = notePan;
+                }
+                track.event(onTick, 0x90 | channel, pitch, constrain(Math.round(snapshot.getDynamic(i)), 1, 127));
+                noteOffTicks[pitch] = offTick;
+            }
+        }
+        releaseNotes(track, channel, noteOffTicks, Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes the note offs of every sounding pitch that is to be released at
+     * or before the given tick, in order.
+     */
+    private static void releaseNotes(Track track, int channel, long[] noteOffTicks, long tick) throws IOException {
+        while (true) {
+            int next = -1;
+            for (int pitch = 0; pitch < noteOffTicks.length; pitch++) {
+                if (noteOffTicks[pitch] != -1 && noteOffTicks[pitch] <= tick
+                        && (next == -1 || noteOffTicks[pitch] < noteOffTicks[next])) {
+                    next = pitch;
+                }
+            }
+            if (next == -1) {
+                return;
+            }
+            track.event(noteOffTicks[next], 0x80 | channel, next, 0);
+            noteOffTicks[next] = -1;
+        }
+    }
+
+    /******************
+     ***** Tracks *****
+     ******************/
+
+    /**
+     * A track chunk being streamed to a file.
+     */
+    private static class Track {
+        private final DataOutputStream out;
+        private final long lengthPosition;
+        private long tick;
+
+        private Track(DataOutputStream out, long lengthPosition) {
+            this.out = out;
+            this.lengthPosition = lengthPosition;
+        }
+
+        /**
+         * Writes an event at the given tick, which must not be before the
+         * tick of the previous event.
+         */
+        private void event(long tick, int... bytes) throws IOException {
+            writeVariableLength(tick - this.tick);
+            this.tick = tick;
+            for (int b : bytes) {
+                out.writeByte(b);
+            }
+        }
+
+        /**
+         * Writes a number as a MIDI variable-length quantity.
+         */
+        private void writeVariableLength(long x) throws IOException {
+            if (x < 0 || x > 0x0FFFFFFF) {
+                throw new IllegalArgumentException("Delta time " + x + " is out of range.");
+            }
+            int shift = 21;
+            while (shift > 0 && (x >> shift) == 0) {
+                shift -= 7;
+            }
+            for (; shift > 0; shift -= 7) {
+                out.writeByte((int) ((x >> shift) & 0x7F) | 0x80);
+            }
+            out.writeByte((int) (x & 0x7F));
+        }
+    }
+
+    /**
+     * Starts a track chunk, leaving its length to be filled in by endTrack().
+     */
+    private static Track startTrack(BufferedOutputStream out, FileChannel channel) throws IOException {
+        out.flush();
+        long lengthPosition = channel.position() + 4;
+        out.write(new byte[] { 'M', 'T', 'r', 'k', 0, 0, 0, 0 });
+        return new Track(new DataOutputStream(out), lengthPosition);
+    }
+
+    /**
+     * Ends a track chunk at the given tick (or at its last event, if that's
+     * later) and fills in its length.
+     */
+    private static void endTrack(Track track, long endTick, FileChannel channel) throws IOException {
+        track.event(Math.max(endTick, track.tick), 0xFF, 0x2F, 0x00);
+        track.out.flush();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        length.putInt(track.out.size());
+        length.flip();
+        channel.write(length, track.lengthPosition);
+    }
+
+    /*****************************
+     ***** Utility Functions *****
+     *****************************/
+
+    private static long toTick(double beats) {
+        return Math.round(beats * TICKS_PER_BEAT);
+    }
+
+    private static int constrain(int x, int min, int max) {
+        return Math.max(min, Math.min(max, x));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,217 @@
+package phasing;
+
+/**
+ * Computes where each of the two players is in the phrase at any given
+ * moment.
+ * 
+ * Both players play the same phrase over and over at constant tempos, so a
+ * player's position is a closed-form function of the time elapsed since
+ * playback started: (elapsed time * tempo) modulo the phrase's duration. The
+ * time is kept as a long number of nanoseconds and the positions are computed
+ * in double precision, so positions don't accumulate error no matter how long
+ * playback goes on, and a position can be asked for at any timestamp, not
+ * just once per frame.
+ * 
+ * The audio is played by sequencers that keep time on their own, so a
+ * PhasePosition can also be compared against where a sequencer says a player
+ * is (its drift), and re-anchored to the sequencer if the two disagree.
+ * 
+ * @author James Morrow
+ *
+ */
+public class PhasePosition {
+    private static final double NANOS_PER_MINUTE = 60e9;
+
+    // anchor
+    private long startNanos;
+    private double startNotept1, startNotept2;
+
+    // rates
+    private double beatsPerNano1, beatsPerNano2;
+    private double phraseDuration;
+
+    /**
+     * Constructs a PhasePosition that hasn't started yet. Until it is started,
+     * both players stay at the beginning of an empty phrase, whatever the
+     * timestamp.
+     */
+    public PhasePosition() {
+    }
+
+    /**
+     * Starts both players at the beginning of the phrase.
+     * 
+     * @param nanos
+     *            The timestamp at which playback starts, in nanoseconds. Every
+     *            timestamp given to this PhasePosition must come from the same
+     *            clock.
+     * @param bpm1
+     *            The tempo of the first player, in beats per minute.
+     * @param bpm2
+     *            The tempo of the second player, in beats per minute.
+     * @param phraseDuration
+     *            The duration of the phrase, in beats.
+     */
+    public void start(long nanos, float bpm1, float bpm2, float phraseDuration) {
+        this.startNanos = nanos;
+        this.startNotept1 = 0;
+        this.startNotept2 = 0;
+        this.beatsPerNano1 = bpm1 / NANOS_PER_MINUTE;
+        this.beatsPerNano2 = bpm2 / NANOS_PER_MINUTE;
+        this.phraseDuration = phraseDuration;
+    }
+
+    /**
+     * Re-anchors the first player, so that it is at the given position at the
+     * given timestamp. Its tempo stays the same.
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @param notept1
+     *            The position of the first player, in beats.
+     */
+    public void resync1(long nanos, double notept1) {
+        startNotept1 = notept1 - (nanos - startNanos) * beatsPerNano1;
+    }
+
+    /**
+     * Re-anchors the second player, so that it is at the given position at
+     * the given timestamp. Its tempo stays the same.
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @param notept2
+     *            The position of the second player, in beats.
+     */
+    public void resync2(long nanos, double notept2) {
+        startNotept2 = notept2 - (nanos - startNanos) * beatsPerNano2;
+    }
+
+    /*********************
+     ***** Positions *****
+     *********************/
+
+    /**
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @return The number of beats the first player has played since playback
+     *         started, without wrapping around at the end of the phrase.
+     */
+    public double getTotalNotept1(long nanos) {
+        return startNotept1 + (nanos - startNanos) * beatsPerNano1;
+    }
+
+    /**
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @return The number of beats the second player has played since
+     *         playback started, without wrapping around at the end of the
+     *         phrase.
+     */
+    public double getTotalNotept2(long nanos) {
+        return startNotept2 + (nanos - startNanos) * beatsPerNano2;
+    }
+
+    /**
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @return The position of the first player within the phrase, in beats.
+     */
+    public double getNotept1(long nanos) {
+        return wrap(getTotalNotept1(nanos));
+    }
+
+    /**
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @return The position of the second player within the phrase, in beats.
+     */
+    public double getNotept2(long nanos) {
+        return wrap(getTotalNotept2(nanos));
+    }
+
+    /**
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @return How far ahead of the first player the second player is, within
+     *         the phrase, in beats.
+     */
+    public double getPhaseDifference(long nanos) {
+        return wrap(getTotalNotept2(nanos) - getTotalNotept1(nanos));
+    }
+
+    /*****************
+     ***** Drift *****
+     *****************/
+
+    /**
+     * Compares where the first player is according to this PhasePosition with
+     * where it is according to some other source, like a sequencer.
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @param measuredNotept1
+     *            The position of the first player according to the other
+     *            source, in beats.
+     * @return How far ahead of the other source this PhasePosition is, in
+     *         beats, between minus half the phrase's duration and plus half
+     *         the phrase's duration.
+     */
+    public double getDrift1(long nanos, double measuredNotept1) {
+        return signedWrap(getTotalNotept1(nanos) - measuredNotept1);
+    }
+
+    /**
+     * Compares where the second player is according to this PhasePosition
+     * with where it is according to some other source, like a sequencer.
+     * 
+     * @param nanos
+     *            The timestamp.
+     * @param measuredNotept2
+     *            The position of the second player according to the other
+     *            source, in beats.
+     * @return How far ahead of the other source this PhasePosition is, in
+     *         beats, between minus half the phrase's duration and plus half
+     *         the phrase's duration.
+     */
+    public double getDrift2(long nanos, double measuredNotept2) {
+        return signedWrap(getTotalNotept2(nanos) - measuredNotept2);
+    }
+
+    /*****************************
+     ***** Utility Functions *****
+     *****************************/
+
+    /**
+     * 
+     * @return The duration of the phrase, in beats.
+     */
+    public double getPhraseDuration() {
+        return phraseDuration;
+    }
+
+    /**
+     * Wraps the given number of beats into the range [0, phraseDuration).
+     */
+    private double wrap(double notept) {
+        if (phraseDuration <= 0) {
+            return 0;
+        }
+        double x = notept % phraseDuration;
+        return (x < 0) ? x + phraseDuration : x;
+    }
+
+    /**
+     * Wraps the given number of beats into the range [-phraseDuration/2,
+     * phraseDuration/2).
+     */
+    private double signedWrap(double notept) {
+        double x = wrap(notept + phraseDuration / 2.0);
+        return x - phraseDuration / 2.0;
+    }
+}
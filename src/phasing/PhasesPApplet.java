@@ -6,11 +6,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import arb.soundcipher.SCScore;
 import controlP5.Button;
 import controlP5.ControlP5;
 import controlP5.Controller;
@@ -28,7 +34,12 @@ import screens.HelpScreen;
 import screens.PhraseRepository;
 import screens.Presenter;
 import screens.Screen;
+import util.Clock;
 import util.NameGenerator;
+import util.RealClock;
+import util.SaveService;
+import util.SineTable;
+import util.StartupProfiler;
 
 /**
  * 
@@ -56,6 +67,19 @@ public class PhasesPApplet extends PApplet {
     public PhrasePicture currentPhrasePicture;
     public Scale currentScale;
     private ArrayList<PhrasePicture> phrasePictures;
+    private final PhrasePictureLoader phrasePictureLoader = new PhrasePictureLoader(100);
+
+    // saving
+    private final SaveService saveService = new SaveService(500);
+    // false if the phrase library file couldn't be read or moved aside, so
+    // saving over it would lose the phrases in it
+    private boolean phraseLibraryWritable = true;
+
+    // startup
+    private final StartupProfiler startupProfiler = new StartupProfiler();
+
+    // time
+    private final Clock clock;
 
     public final static float DEFAULT_BPM_1 = 60;
     public final static float DEFAULT_BPM_DIFFERENCE = 0.5f;
@@ -64,7 +88,8 @@ public class PhasesPApplet extends PApplet {
     private float bpm2 = bpm1 + DEFAULT_BPM_DIFFERENCE;
     private float bpms2 = bpm2 / 60000f;
 
-    // screens
+    // screens (all but the presenter are constructed the first time they're
+    // needed)
     private Presenter presenter;
     private Editor editor;
     private PhraseRepository phraseRepo;
@@ -75,6 +100,8 @@ public class PhasesPApplet extends PApplet {
     // visual variables
     private static ColorScheme colorScheme;
     public static PFont pfont12, pfont14, pfont18, pfont24, pfont64, musicFont;
+    // fonts being loaded in the background, by file name:
+    private final Map<String, CompletableFuture<PFont>> fontsLoading = new HashMap<String, CompletableFuture<PFont>>();
 
     // controlp5
     private ControlP5 cp5;
@@ -114,6 +141,23 @@ public class PhasesPApplet extends PApplet {
      ***** Setup *****
      *****************/
 
+    /**
+     * Constructs a PhasesPApplet that keeps time by the real time clock.
+     */
+    public PhasesPApplet() {
+        this(new RealClock());
+    }
+
+    /**
+     * Constructs a PhasesPApplet that keeps time by the given clock.
+     * 
+     * @param clock
+     *            The clock that playback and animation keep time by.
+     */
+    public PhasesPApplet(Clock clock) {
+        this.clock = clock;
+    }
+
     /**
      * Sets the initial width and height of the window. But PhasesPApplet
      * reverts to its defaults if the given width is less than 800 or the given
@@ -140,13 +184,9 @@ public class PhasesPApplet extends PApplet {
      * Initializes all of the class's static variables.
      */
     private void initStaticVariables() {
-        // init font variables
-        pfont12 = loadFont("DejaVuSans-12.vlw");
-        pfont14 = loadFont("DejaVuSans-14.vlw");
-        pfont18 = loadFont("DejaVuSans-18.vlw");
-        pfont24 = loadFont("DejaVuSans-24.vlw");
-        pfont64 = loadFont("DejaVuSans-64.vlw");
-        musicFont = loadFont("MaestroWide-48.vlw");
+        // start loading fonts (they're picked up by finishLoadingFonts() and
+        // getMusicFont())
+        startLoadingFonts();
 
         // init colors
         initColorScheme();
@@ -156,7 +196,7 @@ public class PhasesPApplet extends PApplet {
         saveFolderPath = this.sketchPath() + "/sav/";
         dataFolderPath = this.sketchPath() + "/data/";
 
-        initPhrasePictures();
+        startupProfiler.time("phrase pictures", this::initPhrasePictures);
 
         // init name generator, excluding names given by phrasePictures
         phrasePictureNameGenerator = new NameGenerator(PhrasePicture.getNames(phrasePictures));
@@ -166,20 +206,25 @@ public class PhasesPApplet extends PApplet {
      * Does the initial setup.
      */
     public void setup() {
-        initStaticVariables();
-        initPlayerInfo();
+        startupProfiler.time("static variables", this::initStaticVariables);
+        startupProfiler.time("player info", this::initPlayerInfo);
         initBPMData(playerInfo);
         surface.setResizable(true);
-        initScales();
-        if (currentPhrase == null) {
-            initCurrentPhrase();
-        }
-        initCurrentScale(currentPhrase);
-        initScreens();
+        startupProfiler.time("scales", this::initScales);
+        startupProfiler.time("current phrase", () -> {
+            if (currentPhrase == null) {
+                initCurrentPhrase();
+            }
+            initCurrentScale(currentPhrase);
+        });
+        startupProfiler.time("fonts", this::finishLoadingFonts);
+        startupProfiler.time("screens", this::initScreens);
         currentScreen = presenter;
-        initCP5Objects(currentScreen);
-        changeScreenTo(currentScreen);
-        currentScreen.onEnter();
+        startupProfiler.time("first screen", () -> {
+            initCP5Objects(currentScreen);
+            changeScreenTo(currentScreen);
+            currentScreen.onEnter();
+        });
         if (hideCursor) {
             noCursor();
         }
@@ -188,6 +233,62 @@ public class PhasesPApplet extends PApplet {
         hint(this.DISABLE_OPTIMIZED_STROKE);
     }
 
+    /**
+     * Starts loading every font on a background thread, so that the fonts load
+     * while the rest of setup goes on.
+     */
+    private void startLoadingFonts() {
+        String[] fileNames = { "DejaVuSans-12.vlw", "DejaVuSans-14.vlw", "DejaVuSans-18.vlw", "DejaVuSans-24.vlw",
+                "DejaVuSans-64.vlw", "MaestroWide-48.vlw" };
+        for (String fileName : fileNames) {
+            fontsLoading.put(fileName, CompletableFuture.supplyAsync(() -> loadFont(fileName)));
+        }
+    }
+
+    /**
+     * Waits for the fonts that the screens use to finish loading. The music
+     * font, which is only used for drawing symbols, is left to finish loading
+     * in the background until it's needed.
+     */
+    private void finishLoadingFonts() {
+        pfont12 = awaitFont("DejaVuSans-12.vlw");
+        pfont14 = awaitFont("DejaVuSans-14.vlw");
+        pfont18 = awaitFont("DejaVuSans-18.vlw");
+        pfont24 = awaitFont("DejaVuSans-24.vlw");
+        pfont64 = awaitFont("DejaVuSans-64.vlw");
+    }
+
+    /**
+     * Waits for the given font to finish loading.
+     * 
+     * @param fileName
+     *            The file name of the font.
+     * @return The font, or null if it couldn't be loaded.
+     */
+    private PFont awaitFont(String fileName) {
+        CompletableFuture<PFont> font = fontsLoading.remove(fileName);
+        return (font != null) ? font.join() : loadFont(fileName);
+    }
+
+    /**
+     * 
+     * @return The timings of the phases of startup.
+     */
+    public StartupProfiler getStartupProfiler() {
+        return startupProfiler;
+    }
+
+    /**
+     * 
+     * @return The font used for drawing musical symbols.
+     */
+    public PFont getMusicFont() {
+        if (musicFont == null) {
+            musicFont = awaitFont("MaestroWide-48.vlw");
+        }
+        return musicFont;
+    }
+
     /**
      * Initializes the program-wide BPM (beats per minute) data.
      * 
@@ -231,9 +332,48 @@ public class PhasesPApplet extends PApplet {
      */
     private void initScreens() {
         presenter = new Presenter(this, showAnimationError);
-        editor = new Editor(this);
-        phraseRepo = new PhraseRepository(this);
-        help = new HelpScreen(editor, this);
+    }
+
+    /**
+     * 
+     * @return The Editor screen, which is constructed the first time it's
+     *         needed.
+     */
+    private Editor getEditor() {
+        if (editor == null) {
+            long startNanos = System.nanoTime();
+            editor = new Editor(this);
+            startupProfiler.record("lazy editor", System.nanoTime() - startNanos);
+        }
+        return editor;
+    }
+
+    /**
+     * 
+     * @return The PhraseRepository screen, which is constructed the first time
+     *         it's needed.
+     */
+    private PhraseRepository getPhraseRepo() {
+        if (phraseRepo == null) {
+            long startNanos = System.nanoTime();
+            phraseRepo = new PhraseRepository(this);
+            startupProfiler.record("lazy phrase repository", System.nanoTime() - startNanos);
+        }
+        return phraseRepo;
+    }
+
+    /**
+     * 
+     * @return The Help screen, which is constructed the first time it's
+     *         needed.
+     */
+    private HelpScreen getHelp() {
+        if (help == null) {
+            long startNanos = System.nanoTime();
+            help = new HelpScreen(getEditor(), this);
+            startupProfiler.record("lazy help", System.nanoTime() - startNanos);
+        }
+        return help;
     }
 
     /**
@@ -450,29 +590,53 @@ public class PhasesPApplet extends PApplet {
      * Looks at all the JSON files in the data/scales folder and tries to
      * translate them into scale sets, which go into the PhasesPApplet member
      * variable "scaleSets".
+     * 
+     * The scale sets are read from the scale cache if it is up to date.
+     * Otherwise the JSON files are parsed in parallel and the cache is saved
+     * for next time.
      */
     private void loadScales() {
         try {
-            int i = 0;
-            Files.walk(Paths.get(dataFolderPath + "scales")).forEach(filePath -> {
-                if (filePath.toString().endsWith(".json")) {
-                    BufferedReader reader = createReader(filePath.toString());
-                    JSONObject json = new JSONObject(reader);
-                    ScaleSet ss = new ScaleSet(json);
-                    scaleSets.put(ss.getName(), ss);
-                    scaleTypes.add(ss.getName());
-                    try {
-                        reader.close();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+            List<File> files;
+            try (Stream<Path> filePaths = Files.walk(Paths.get(dataFolderPath + "scales"))) {
+                files = filePaths.filter(filePath -> filePath.toString().endsWith(".json")).map(Path::toFile)
+                        .collect(Collectors.toList());
+            }
+
+            File cacheFile = new File(saveFolderPath + "scales.bin");
+            List<ScaleSet> loadedScaleSets = ScaleCache.read(cacheFile, files);
+            if (loadedScaleSets == null) {
+                loadedScaleSets = files.parallelStream().map(this::loadScaleSet).collect(Collectors.toList());
+                saveService.save(ScaleCache.toBytes(files, loadedScaleSets), cacheFile);
+            }
+
+            for (ScaleSet ss : loadedScaleSets) {
+                scaleSets.put(ss.getName(), ss);
+                scaleTypes.add(ss.getName());
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Parses the given JSON file into a scale set.
+     * 
+     * @param file
+     *            The JSON file.
+     * @return The scale set.
+     */
+    private ScaleSet loadScaleSet(File file) {
+        BufferedReader reader = createReader(file);
+        JSONObject json = new JSONObject(reader);
+        try {
+            reader.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return new ScaleSet(json);
+    }
+
     /**
      * Tries to initialize the current phrase and current phrase picture by
      * loading the appropriate file.
@@ -500,10 +664,11 @@ public class PhasesPApplet extends PApplet {
 
     /**
      * Saves the phrase picture of the current phrase to the phrases subfolder
-     * in the save folder.
+     * in the save folder. The file is written in the background, shortly
+     * afterward.
      */
     public void saveCurrentPhrasePicture() {
-        saveJSONObject(currentPhrasePicture.toJSON(), saveFolderPath + "phrases/Current Phrase.json");
+        saveService.save(currentPhrasePicture.toJSON(), new File(saveFolderPath + "phrases/Current Phrase.json"));
     }
 
     /**
@@ -532,60 +697,188 @@ public class PhasesPApplet extends PApplet {
     }
 
     /**
-     * Saves the player info to a file in the save folder.
+     * Saves the player info to a file in the save folder. The file is written
+     * in the background, shortly afterward.
      */
     public void savePlayerInfo() {
         JSONObject json = playerInfo.toJSON();
         try {
-            saveJSONObject(json, saveFolderPath + "playerInfo.json");
+            saveService.save(json, new File(saveFolderPath + "playerInfo.json"));
         } catch (RuntimeException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Saves the given PhrasePicture to the phrases subfolder of the save
-     * folder.
+     * Exports the given PhrasePicture as a JSON file in the phrases subfolder
+     * of the save folder. Any such file is imported into the phrase library
+     * the next time the phrase pictures are loaded, unless the library already
+     * has a phrase picture by that name.
      * 
      * @param p
      *            The PhrasePicture.
      * @return True if the operation is successful, false otherwise.
      */
-    private boolean savePhrasePicture(PhrasePicture p) {
+    public boolean exportPhrasePicture(PhrasePicture p) {
         try {
             saveJSONObject(p.toJSON(), saveFolderPath + "phrases/" + p.getName() + ".json");
             return true;
         } catch (RuntimeException e) {
-            System.out.println("runtime exception encountered saving phrase picture.");
+            System.out.println("runtime exception encountered exporting phrase picture.");
             return false;
         }
     }
 
     /**
-     * Saves all the PhrasePictures contained in the phrasePictures list.
+     * Saves all the PhrasePictures contained in the phrasePictures list to the
+     * phrase library file in the save folder. The PhrasePictures are encoded
+     * right away, but the file is written in the background, shortly
+     * afterward.
      */
     private void savePhrasePictures() {
-        for (PhrasePicture p : phrasePictures) {
-            savePhrasePicture(p);
+        if (!phraseLibraryWritable) {
+            return;
+        }
+        try {
+            saveService.save(PhraseLibrary.toBytes(phrasePictures), new File(saveFolderPath + "phrases.bin"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
         }
     }
 
     /**
-     * Loads the phrase pictures from the phrases subfolder in the save folder,
-     * except for any file named "Current Phrase".
+     * Saves all the PhrasePictures contained in the phrasePictures list to the
+     * phrase library file in the save folder, waiting until the file is
+     * written.
+     * 
+     * @return True if the operation is successful, false otherwise.
+     */
+    private boolean savePhrasePicturesNow() {
+        if (!phraseLibraryWritable) {
+            return false;
+        }
+        try {
+            PhraseLibrary.write(new File(saveFolderPath + "phrases.bin"), phrasePictures);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Loads the phrase pictures from the phrase library file in the save
+     * folder. Only the names of the phrase pictures are read here, each one
+     * decodes the rest of itself the first time it is needed.
+     * 
+     * If the library file can't be read, it is renamed aside (to
+     * "phrases.bin.bad") before anything is saved over it, so the phrases in
+     * it aren't lost. If it can't be renamed either, the library isn't saved
+     * at all this session.
+     * 
+     * Then imports any JSON files in the phrases subfolder of the save folder
+     * that aren't in the library yet, except for any file named "Current
+     * Phrase". Once they are in the library, the imported files are moved to
+     * the "phrases backup" subfolder of the save folder.
      * 
      * @return True, if it succeeds. False, if it fails.
      */
     public boolean loadPhrasePictures() {
+        phrasePictures = new ArrayList<PhrasePicture>();
+        Set<String> names = new HashSet<String>();
+
+        File libraryFile = new File(saveFolderPath + "phrases.bin");
+        boolean libraryLoaded = false;
+        if (libraryFile.exists()) {
+            try {
+                PhraseLibrary library = new PhraseLibrary(libraryFile);
+                for (int i = 0; i < library.size(); i++) {
+                    phrasePictures.add(library.get(i));
+                    names.add(library.getName(i));
+                }
+                libraryLoaded = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                phraseLibraryWritable = moveAside(libraryFile);
+            }
+        }
+
+        List<Path> importedFiles = new ArrayList<Path>();
+        boolean importSucceeded = importPhrasePictures(names, importedFiles);
+        if (importedFiles.size() > 0 && savePhrasePicturesNow()) {
+            // the imported phrase pictures are in the library now
+            for (Path filePath : importedFiles) {
+                backUpPhrasePictureFile(filePath);
+            }
+        }
+        return libraryLoaded || importSucceeded;
+    }
+
+    /**
+     * Renames the given unreadable file to the first of "name.bad",
+     * "name.bad1", "name.bad2", ... that doesn't exist yet.
+     * 
+     * @param file
+     *            The file.
+     * @return True if the file was renamed, false otherwise.
+     */
+    private boolean moveAside(File file) {
+        File badFile = new File(file.getPath() + ".bad");
+        for (int i = 1; badFile.exists(); i++) {
+            badFile = new File(file.getPath() + ".bad" + i);
+        }
+        try {
+            Files.move(file.toPath(), badFile.toPath());
+            System.err.println("Moved unreadable " + file + " to " + badFile + ".");
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Couldn't move unreadable " + file + " aside, so the phrase library won't be saved.");
+            return false;
+        }
+    }
+
+    /**
+     * Moves the given imported PhrasePicture file into the phrases backup
+     * subfolder of the save folder, so that it isn't imported again.
+     * 
+     * @param filePath
+     *            The path of the file.
+     */
+    private void backUpPhrasePictureFile(Path filePath) {
+        try {
+            Path backupFolder = Paths.get(saveFolderPath + "phrases backup/");
+            Files.createDirectories(backupFolder);
+            Files.move(filePath, backupFolder.resolve(filePath.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Imports the JSON files in the phrases subfolder of the save folder,
+     * except for any file named "Current Phrase" and any file named after a
+     * phrase picture that has already been loaded.
+     * 
+     * @param names
+     *            The names of the phrase pictures that have already been
+     *            loaded.
+     * @param importedFiles
+     *            The list to add the paths of the imported files to.
+     * @return True, if it succeeds. False, if it fails.
+     */
+    private boolean importPhrasePictures(Set<String> names, List<Path> importedFiles) {
         try {
-            phrasePictures = new ArrayList<PhrasePicture>();
             Path path = Paths.get(saveFolderPath + "phrases/");
             Files.walk(path).forEach(filePath -> {
-                if (filePath.toString().endsWith(".json") && !filePath.toString().contains("Current Phrase.json")) {
+                String fileName = filePath.getFileName().toString();
+                if (fileName.endsWith(".json") && !fileName.equals("Current Phrase.json")
+                        && !names.contains(fileName.substring(0, fileName.length() - 5))) {
 
                     BufferedReader reader = createReader(filePath.toString());
                     JSONObject json = new JSONObject(reader);
                     phrasePictures.add(new PhrasePicture(json));
+                    importedFiles.add(filePath);
                     try {
                         reader.close();
                     } catch (Exception e) {
@@ -601,23 +894,30 @@ public class PhasesPApplet extends PApplet {
     }
 
     /**
-     * Tries to delete the PhrasePicture located in the phrases subfolder of the
-     * save folder that has the given name and should succeed in doing so if the
-     * file exists.
+     * Tries to delete the exported PhrasePicture located in the phrases
+     * subfolder of the save folder that has the given name, so that it isn't
+     * imported again.
      * 
      * @param name
      *            The name (w/o the extension) of the file.
      */
     private void deletePhrasePictureFile(String name) {
-        File file = new File(saveFolderPath + "phrases/" + name + ".json");
+        deletePhrasePictureFile(new File(saveFolderPath + "phrases/" + name + ".json"));
+    }
+
+    /**
+     * Tries to delete the given exported PhrasePicture file, if it exists.
+     * 
+     * @param file
+     *            The file.
+     */
+    private void deletePhrasePictureFile(File file) {
         if (file.exists()) {
             try {
                 boolean success = file.delete();
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        } else {
-            System.out.println("file does not exist.");
         }
     }
 
@@ -937,7 +1237,7 @@ public class PhasesPApplet extends PApplet {
      */
     public void toHelp() {
         if (currentScreen != help) {
-            changeScreenTo(help);
+            changeScreenTo(getHelp());
         }
     }
 
@@ -946,7 +1246,7 @@ public class PhasesPApplet extends PApplet {
      */
     public void toEditor() {
         if (currentScreen != editor) {
-            changeScreenTo(editor);
+            changeScreenTo(getEditor());
         }
     }
 
@@ -956,7 +1256,7 @@ public class PhasesPApplet extends PApplet {
      */
     public void toPhraseRepo() {
         if (currentScreen != phraseRepo) {
-            changeScreenTo(phraseRepo);
+            changeScreenTo(getPhraseRepo());
         }
     }
 
@@ -1002,11 +1302,15 @@ public class PhasesPApplet extends PApplet {
      *********************/
 
     /**
-     * Sends a message to the current screen to draw itself.
+     * Publishes the edits made to the current phrase since the last frame,
+     * then sends a message to the current screen to draw itself.
      */
     public void draw() {
+        clock.tick();
+        currentPhrase.publishSnapshot();
         checkForWindowResizeEvent();
         currentScreen.draw();
+        startupProfiler.firstFrameDrawn();
     }
 
     /********************************
@@ -1079,6 +1383,7 @@ public class PhasesPApplet extends PApplet {
         this.savePlayerInfo();
         this.saveCurrentPhrasePicture();
         this.savePhrasePictures();
+        saveService.flush();
         super.exitActual();
     }
 
@@ -1195,7 +1500,7 @@ public class PhasesPApplet extends PApplet {
      */
     public void drawQuarterNoteSymbol(float cenx, float ceny, int textSize) {
         pushStyle();
-        textFont(musicFont);
+        textFont(getMusicFont());
         textSize(textSize);
         textAlign(CENTER, CENTER);
         text("q", cenx, ceny - textSize * 0.2f);
@@ -1267,7 +1572,7 @@ public class PhasesPApplet extends PApplet {
         float dx = length / numPts;
 
         for (int i = 0; i < numPts; i++) {
-            point(x, ceny + amp * sin(theta));
+            point(x, ceny + amp * SineTable.DEFAULT.sin(theta));
             x += dx;
             theta += dTheta;
         }
@@ -1312,38 +1617,47 @@ public class PhasesPApplet extends PApplet {
         img.save(filename);
     }
 
-    // Algorithm is somewhat sound, but score.writeMidiFile() won't produce a
-    // playable MIDI file.
+    /**
+     * Writes a full cycle of the phasing process of the given phrase, at the
+     * current tempos, to a MIDI file.
+     * 
+     * @param phrase
+     *            The phrase.
+     * @param location
+     *            The folder to put the file in.
+     * @param name
+     *            The name of the file, without the extension.
+     */
     public void phraseToMidiFile(Phrase phrase, String location, String name) {
-        SCScore score = new SCScore();
-
-        final float ERROR_TOLERANCE = 0.01f;
-        final int NOTE = 0, REST = 1;
-        float multiplier = PApplet.max(bpm1, bpm2) / PApplet.min(bpm1, bpm2);
-        float notept1 = 0, notept2 = 0;
-        do {
-
-            // add all the notes from player 1
-            for (int i = 0; i < phrase.getNumNotes(); i++) {
-                float dur = phrase.getSCDuration(i);
-                score.addNote(notept1, 0, 0, phrase.getSCPitch(i), phrase.getSCDynamic(i), dur,
-                        phrase.getSCArticulation(i), phrase.getSCPan(i));
-                notept1 += dur;
-            }
-
-            // add all the notes from player 2
-            if (notept2 < notept1) {
-                for (int i = 0; i < phrase.getNumNotes(); i++) {
-                    float dur = phrase.getSCDuration(i) * multiplier;
-                    score.addNote(notept2, 0, 0, phrase.getSCPitch(i), phrase.getSCDynamic(i), dur,
-                            phrase.getSCArticulation(i), phrase.getSCPan(i));
-                    notept2 += dur;
-                }
-            }
-        } while (abs(notept1 - notept2) > ERROR_TOLERANCE);
+        phrase.publishSnapshot();
+        try {
+            new MidiExporter(bpm1, bpm2, 0).write(phrase.getSnapshot(), new File(location, name + ".mid"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Couldn't export " + name + " to MIDI: " + e.getMessage());
+        }
+    }
 
-        score.tempo(PApplet.min(bpm1, bpm2));
-        score.writeMidiFile(location + "/" + name + ".mid");
+    /**
+     * Writes a full cycle of the phasing process of every phrase in the
+     * library, at the current tempos, to MIDI files named after the phrases.
+     * The files are written in parallel.
+     * 
+     * @param location
+     *            The folder to put the files in.
+     */
+    public void phrasesToMidiFiles(String location) {
+        List<PhraseSnapshot> snapshots = new ArrayList<PhraseSnapshot>();
+        List<File> files = new ArrayList<File>();
+        for (PhrasePicture p : phrasePictures) {
+            snapshots.add(p.getSnapshot());
+            files.add(new File(location, p.getName() + ".mid"));
+        }
+        int numFailures = new MidiExporter(bpm1, bpm2, 0).writeAll(snapshots, files);
+        if (numFailures > 0) {
+            System.err.println(numFailures + " of " + files.size() + " phrases couldn't be exported to MIDI.");
+        }
     }
 
     /**
@@ -1452,17 +1766,23 @@ public class PhasesPApplet extends PApplet {
      * @return The matching scale, or null if no scale matches.
      */
     public Scale getScale(String root, String scaleName) {
-        for (String name : scaleTypes) {
-            if (name.equals(scaleName)) {
-                ScaleSet ss = scaleSets.get(name);
-                for (int i = 0; i < ss.numScales(); i++) {
-                    String scaleRootName = ss.getScale(i).getNoteNameByIndex(0);
-
-                    if (noteNamesAreEquivalent(root, scaleRootName)) {
-                        return ss.getScale(i);
-                    }
-                }
-                break;
+        ScaleSet ss = scaleSets.get(scaleName);
+        if (ss == null) {
+            return null;
+        }
+
+        // look the scale up by the pitch class of its root
+        int rootPitchClass = Scale.pitchClassOf(root);
+        if (rootPitchClass != -1) {
+            return ss.getScaleByRootPitchClass(rootPitchClass);
+        }
+
+        // the root name can't be read, so fall back to comparing names
+        for (int i = 0; i < ss.numScales(); i++) {
+            String scaleRootName = ss.getScale(i).getNoteNameByIndex(0);
+
+            if (noteNamesAreEquivalent(root, scaleRootName)) {
+                return ss.getScale(i);
             }
         }
         return null;
@@ -1633,6 +1953,23 @@ public class PhasesPApplet extends PApplet {
         return PApplet.lerpColor(colorScheme.color1Bold, colorScheme.color2Bold, amt, PApplet.RGB);
     }
 
+    /**
+     * 
+     * @return The service that saves files in the background, which keeps
+     *         metrics on how saving is going.
+     */
+    public SaveService getSaveService() {
+        return saveService;
+    }
+
+    /**
+     * 
+     * @return The clock that playback and animation keep time by.
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
     /**
      * 
      * @return The beats per minute of the first piano player
@@ -1738,7 +2075,37 @@ public class PhasesPApplet extends PApplet {
      * @return The PhrasePicture.
      */
     public PhrasePicture getPhrasePicture(int i) {
-        return phrasePictures.get(i);
+        PhrasePicture p = phrasePictures.get(i);
+        phrasePictureLoader.touch(p);
+        return p;
+    }
+
+    /**
+     * Starts decoding the PhrasePictures in the given range of indices on a
+     * background thread, so that they are ready by the time they are needed.
+     * Indices outside of the list of PhrasePictures are ignored.
+     * 
+     * @param from
+     *            The first index (inclusive).
+     * @param to
+     *            The last index (exclusive).
+     */
+    public void prefetchPhrasePictures(int from, int to) {
+        from = constrain(from, 0, phrasePictures.size());
+        to = constrain(to, from, phrasePictures.size());
+        phrasePictureLoader.prefetch(new ArrayList<PhrasePicture>(phrasePictures.subList(from, to)));
+    }
+
+    /**
+     * Sets how many decoded PhrasePictures are kept in memory. The least
+     * recently used ones beyond that number are evicted (and decoded again
+     * when they are needed).
+     * 
+     * @param n
+     *            The number of PhrasePictures.
+     */
+    public void setNumPhrasePicturesInMemory(int n) {
+        phrasePictureLoader.setCapacity(n);
     }
 
     /**
@@ -1750,7 +2117,7 @@ public class PhasesPApplet extends PApplet {
      */
     public void addPhrasePicture(PhrasePicture p) {
         phrasePictures.add(p);
-        savePhrasePicture(p);
+        savePhrasePictures();
     }
 
     /**
@@ -1764,7 +2131,7 @@ public class PhasesPApplet extends PApplet {
      */
     public void addPhrasePicture(int i, PhrasePicture p) {
         phrasePictures.add(i, p);
-        savePhrasePicture(p);
+        savePhrasePictures();
     }
 
     /**
@@ -1777,6 +2144,7 @@ public class PhasesPApplet extends PApplet {
     public void removePhrasePicture(int i) {
         this.deletePhrasePictureFile(phrasePictures.get(i).getName());
         phrasePictures.remove(i);
+        savePhrasePictures();
     }
 
     /**
@@ -1,6 +1,7 @@
 package phasing;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import arb.soundcipher.SCScore;
 import processing.core.PApplet;
@@ -44,17 +45,29 @@ public class Phrase implements JSONable {
 
     // for managing state relatively efficiently
     protected boolean scArraysUpToDate = true;
+    protected boolean pitchRangeUpToDate = false;
     protected float minPitch, maxPitch;
 
     // phrase data, in grid notation
     protected float[] gridPitches, gridDynamics, gridArts, gridPans;
     protected int[] cellTypes;
 
-    // phrase data, in soundcipher notation
+    // phrase data, in soundcipher notation (only the first numNotes entries of
+    // each array are meaningful, the rest is spare capacity)
     protected float[] scPitches, scDynamics, scDurations, scArts, scPans;
+    protected int numNotes;
 
-    // other
-    protected float[] scIndexToPercentDuration;
+    // the grid index at which each note starts (in units of unitDuration, this
+    // is the running sum of the durations of the preceding notes)
+    protected int[] scStartCells;
+
+    // the most recently published copy of the phrase, for readers on other
+    // threads
+    private final AtomicReference<PhraseSnapshot> snapshot = new AtomicReference<PhraseSnapshot>();
+    protected boolean snapshotUpToDate = false;
+
+    // the number of times the phrase has been edited
+    private int modCount;
 
     // meta data
     private String scaleClassName, scaleRootName;
@@ -273,6 +286,7 @@ public class Phrase implements JSONable {
         this.scaleClassName = new String(phrase.scaleClassName);
         this.scaleRootName = new String(phrase.scaleRootName);
         scArraysUpToDate = false;
+        modCount++;
     }
 
     /*****************************
@@ -288,7 +302,7 @@ public class Phrase implements JSONable {
         cellTypes = PApplet.append(cellTypes, REST);
         gridArts = PApplet.append(gridArts, defaultArt);
         gridPans = PApplet.append(gridPans, defaultPan);
-        scArraysUpToDate = false;
+        patchSCValues(gridPitches.length - 1, gridPitches.length - 1);
     }
 
     /**
@@ -301,7 +315,7 @@ public class Phrase implements JSONable {
             cellTypes = PApplet.shorten(cellTypes);
             gridArts = PApplet.shorten(gridArts);
             gridPans = PApplet.shorten(gridPans);
-            scArraysUpToDate = false;
+            patchSCValues(gridPitches.length, gridPitches.length);
         }
     }
 
@@ -327,7 +341,8 @@ public class Phrase implements JSONable {
             updateSCValues();
         }
         score.empty();
-        score.addPhrase(startBeat, channel, instrument, scPitches, scDynamics, scDurations, scArts, scPans);
+        score.addPhrase(startBeat, channel, instrument, getSCPitches(), getSCDynamics(), getSCDurations(),
+                getSCArticulations(), getSCPans());
     }
 
     /****************************
@@ -343,86 +358,252 @@ public class Phrase implements JSONable {
      * other object requests soundcipher data or forces phrase to use
      * soundcipher data, then the data fields associated with the soundcipher
      * data will have to be updated, which is what this helper method is for.
+     * 
+     * Edits to individual cells don't go through this method. They go through
+     * patchSCValues(), which only rewrites the notes touching the edited
+     * cells.
      */
     private void updateSCValues() {
         // count the number of notes
         int n = 0;
         for (int i = 0; i < cellTypes.length; i++) {
-            if (cellTypes[i] == NOTE_START) {
-                n++;
-            } else if (cellTypes[i] == REST && (i == 0 || cellTypes[i - 1] != REST)) {
+            if (isNoteStart(i)) {
                 n++;
             }
         }
 
-        // init soundcipher arrays
-        scPitches = new float[n];
-        scDynamics = new float[n];
-        scDurations = new float[n];
-        scArts = new float[n];
-        scPans = new float[n];
+        // make sure the soundcipher arrays can hold that many notes
+        ensureSCCapacity(n);
+        numNotes = n;
 
         // compute sc array values
-        int i = 0; // loops through soundcipher arrays
-        int j = 0; // loops through grid-notation arrays
-        while (i < cellTypes.length) {
-            // if new note
-            if (cellTypes[i] == NOTE_START) {
-                if (i != 0)
-                    j++;
-                scPitches[j] = this.gridPitches[i];
-                scDynamics[j] = this.gridDynamics[i];
-                scDurations[j] = unitDuration;
-                scArts[j] = this.gridArts[i];
-                scPans[j] = this.gridPans[i];
+        writeNotes(0, cellTypes.length, 0);
+
+        pitchRangeUpToDate = false;
+        snapshotUpToDate = false;
+        scArraysUpToDate = true;
+    }
 
+    /**
+     * Puts the phrase's soundcipher representation back in agreement with the
+     * grid after the cells from cellA to cellB (inclusive) have been edited.
+     * 
+     * Only the notes that overlap the edited cells, the note just before them,
+     * and the note just after them can change. So those notes are rewritten
+     * in place, and the notes that follow them are shifted over if the edit
+     * split a note in two or merged two notes into one. The pitch range is
+     * kept up to date as well, unless the edit removes the lowest or highest
+     * pitch, in which case it is recomputed the next time it is requested.
+     * 
+     * If the soundcipher representation is already out of date, this does
+     * nothing, since it will be rebuilt anyway.
+     * 
+     * @param cellA
+     *            The first edited cell.
+     * @param cellB
+     *            The last edited cell.
+     */
+    private void patchSCValues(int cellA, int cellB) {
+        modCount++;
+        if (!scArraysUpToDate) {
+            return;
+        }
+        snapshotUpToDate = false;
+        if (cellTypes.length == 0) {
+            numNotes = 0;
+            pitchRangeUpToDate = false;
+            return;
+        }
+
+        // find the range of notes (and the corresponding range of cells) that
+        // could have been affected by the edit
+        int noteA = getSCIndexOfCell(PApplet.max(cellA - 1, 0));
+        int noteB = (cellB + 1 < cellTypes.length) ? getSCIndexOfCell(cellB + 1) + 1 : numNotes;
+        int startCell = (noteA < numNotes) ? scStartCells[noteA] : 0;
+        int endCell = (noteB < numNotes) ? scStartCells[noteB] : cellTypes.length;
+
+        // count the number of notes the affected cells now make up
+        int n = 0;
+        for (int i = startCell; i < endCell; i++) {
+            if (isNoteStart(i)) {
+                n++;
             }
-            // if continued note
-            else if (cellTypes[i] == NOTE_SUSTAIN) {
-                scDurations[j] += unitDuration;
+        }
+
+        // if an outgoing note defines the pitch range, the range will need to
+        // be recomputed
+        for (int k = noteA; k < noteB && pitchRangeUpToDate; k++) {
+            if (scDynamics[k] > 0 && (scPitches[k] == minPitch || scPitches[k] == maxPitch)) {
+                pitchRangeUpToDate = false;
             }
-            // if rest
-            else if (cellTypes[i] == REST) {
+        }
+
+        // shift the unaffected notes that follow the edit, if necessary
+        int delta = n - (noteB - noteA);
+        if (delta != 0) {
+            ensureSCCapacity(numNotes + delta);
+            int tailSize = numNotes - noteB;
+            System.arraycopy(scPitches, noteB, scPitches, noteB + delta, tailSize);
+            System.arraycopy(scDynamics, noteB, scDynamics, noteB + delta, tailSize);
+            System.arraycopy(scDurations, noteB, scDurations, noteB + delta, tailSize);
+            System.arraycopy(scArts, noteB, scArts, noteB + delta, tailSize);
+            System.arraycopy(scPans, noteB, scPans, noteB + delta, tailSize);
+            System.arraycopy(scStartCells, noteB, scStartCells, noteB + delta, tailSize);
+            numNotes += delta;
+        }
+
+        // rewrite the affected notes
+        writeNotes(startCell, endCell, noteA);
+    }
+
+    /**
+     * Writes the notes made up by the cells from startCell (inclusive) to
+     * endCell (exclusive) into the soundcipher arrays, beginning at the given
+     * index. The cell at startCell must be the start of a note, and the cell
+     * at endCell (if there is one) must be the start of a note, too.
+     * 
+     * @param startCell
+     *            The first cell.
+     * @param endCell
+     *            The cell after the last cell.
+     * @param scIndex
+     *            The index of the first note to write.
+     */
+    private void writeNotes(int startCell, int endCell, int scIndex) {
+        int j = scIndex - 1; // loops through soundcipher arrays
+        for (int i = startCell; i < endCell; i++) { // loops through grid arrays
+            if (isNoteStart(i)) {
+                j++;
+                scStartCells[j] = i;
+                scDurations[j] = unitDuration;
                 // if new rest
-                if (i == 0 || cellTypes[i - 1] != REST) {
-                    if (i != 0)
-                        j++;
+                if (cellTypes[i] == REST) {
+                    scPitches[j] = 0;
                     scDynamics[j] = 0;
-                    scDurations[j] = unitDuration;
+                    scArts[j] = 0;
+                    scPans[j] = 0;
                 }
-                // if continued rest
-                else if (i != 0 && cellTypes[i - 1] == REST) {
-                    scDurations[j] += unitDuration;
+                // if new note
+                else {
+                    scPitches[j] = gridPitches[i];
+                    scDynamics[j] = gridDynamics[i];
+                    scArts[j] = gridArts[i];
+                    scPans[j] = gridPans[i];
+                    if (pitchRangeUpToDate && scDynamics[j] > 0) {
+                        minPitch = PApplet.min(minPitch, scPitches[j]);
+                        maxPitch = PApplet.max(maxPitch, scPitches[j]);
+                    }
                 }
             }
-            i++;
+            // if continued note or continued rest
+            else {
+                scDurations[j] = (i + 1 - scStartCells[j]) * unitDuration;
+            }
         }
+    }
 
-        // compute scIndexToPercentDuration
-        scIndexToPercentDuration = new float[n];
-        float durationAcc = 0;
-        for (int k = 0; k < scPitches.length; k++) {
-            scIndexToPercentDuration[k] = durationAcc / getTotalDuration();
-            durationAcc += scDurations[k];
+    /**
+     * Tells whether or not a new note (or a new rest) begins at the given cell.
+     * 
+     * @param i
+     *            The index to the phrase's grid representation
+     * @return True if a new note or rest begins at the given cell, false if
+     *         the cell continues the note or rest before it.
+     */
+    private boolean isNoteStart(int i) {
+        if (i == 0 || cellTypes[i] == NOTE_START) {
+            return true;
+        } else if (cellTypes[i] == REST) {
+            return cellTypes[i - 1] != REST;
+        } else {
+            return false;
         }
+    }
 
-        // compute minimimum pitch
-        minPitch = Float.MAX_VALUE;
-        for (int k = 0; k < scPitches.length; k++) {
-            if (scDynamics[k] > 0 && scPitches[k] < minPitch) {
-                minPitch = scPitches[k];
+    /**
+     * Makes sure the soundcipher arrays can hold at least the given number of
+     * notes, growing them if they can't.
+     * 
+     * @param capacity
+     *            The number of notes.
+     */
+    private void ensureSCCapacity(int capacity) {
+        if (scPitches == null) {
+            scPitches = new float[capacity];
+            scDynamics = new float[capacity];
+            scDurations = new float[capacity];
+            scArts = new float[capacity];
+            scPans = new float[capacity];
+            scStartCells = new int[capacity];
+        } else if (scPitches.length < capacity) {
+            int newCapacity = PApplet.max(capacity, 2 * scPitches.length);
+            scPitches = Arrays.copyOf(scPitches, newCapacity);
+            scDynamics = Arrays.copyOf(scDynamics, newCapacity);
+            scDurations = Arrays.copyOf(scDurations, newCapacity);
+            scArts = Arrays.copyOf(scArts, newCapacity);
+            scPans = Arrays.copyOf(scPans, newCapacity);
+            scStartCells = Arrays.copyOf(scStartCells, newCapacity);
+        }
+    }
+
+    /**
+     * Publishes a snapshot of the phrase's current state, if the phrase has
+     * changed since the last snapshot was published. Afterward, getSnapshot()
+     * gives the new snapshot, on any thread.
+     * 
+     * Edits aren't published as they happen, so that several edits made in a
+     * row only cost one copy of the phrase. This should be called from the
+     * thread that edits the phrase, once it's done editing it (the
+     * PhasesPApplet does this for the current phrase at the start of every
+     * frame).
+     */
+    public void publishSnapshot() {
+        if (!scArraysUpToDate) {
+            updateSCValues();
+        }
+        if (!snapshotUpToDate) {
+            float[] onsets = new float[numNotes];
+            for (int k = 0; k < numNotes; k++) {
+                onsets[k] = scStartCells[k] * unitDuration;
             }
+            snapshot.set(new PhraseSnapshot(getSCPitches(), getSCDynamics(), getSCDurations(), getSCArticulations(),
+                    getSCPans(), onsets, getTotalDuration(), minPitch(), maxPitch()));
+            snapshotUpToDate = true;
         }
+    }
 
-        // compute maximum pitch
+    /**
+     * Gives the most recently published snapshot of the phrase. This is safe
+     * to call from any thread and never blocks. Edits made since the last call
+     * to publishSnapshot() are not reflected in it.
+     * 
+     * @return The snapshot, or an empty snapshot if none has been published
+     *         yet.
+     */
+    public PhraseSnapshot getSnapshot() {
+        PhraseSnapshot s = snapshot.get();
+        return (s != null) ? s : PhraseSnapshot.EMPTY;
+    }
+
+    /**
+     * Recomputes the lowest and highest pitch in the phrase.
+     */
+    private void updatePitchRange() {
+        if (!scArraysUpToDate) {
+            updateSCValues();
+        }
+
+        // compute minimimum pitch and maximum pitch
+        minPitch = Float.MAX_VALUE;
         maxPitch = Float.MIN_VALUE;
-        for (int k = 0; k < scPitches.length; k++) {
-            if (scDynamics[k] > 0 && scPitches[k] > maxPitch) {
-                maxPitch = scPitches[k];
+        for (int k = 0; k < numNotes; k++) {
+            if (scDynamics[k] > 0) {
+                minPitch = PApplet.min(minPitch, scPitches[k]);
+                maxPitch = PApplet.max(maxPitch, scPitches[k]);
             }
         }
 
-        scArraysUpToDate = true;
+        pitchRangeUpToDate = true;
     }
 
     /*******************************
@@ -440,7 +621,13 @@ public class Phrase implements JSONable {
         for (int i = 0; i < gridPans.length; i++) {
             gridPans[i] = pan;
         }
-        scArraysUpToDate = false;
+        for (int k = 0; scArraysUpToDate && k < numNotes; k++) {
+            if (cellTypes[scStartCells[k]] != REST) {
+                scPans[k] = pan;
+            }
+        }
+        snapshotUpToDate = false;
+        modCount++;
     }
 
     /**
@@ -451,8 +638,8 @@ public class Phrase implements JSONable {
      * @return The lowest value MIDI pitch
      */
     public float minPitch() {
-        if (!scArraysUpToDate) {
-            updateSCValues();
+        if (!scArraysUpToDate || !pitchRangeUpToDate) {
+            updatePitchRange();
         }
         return minPitch;
     }
@@ -465,8 +652,8 @@ public class Phrase implements JSONable {
      * @return The greatest value MIDI pitch
      */
     public float maxPitch() {
-        if (!scArraysUpToDate) {
-            updateSCValues();
+        if (!scArraysUpToDate || !pitchRangeUpToDate) {
+            updatePitchRange();
         }
         return maxPitch;
     }
@@ -486,7 +673,7 @@ public class Phrase implements JSONable {
     public int getNumNotes() {
         if (!scArraysUpToDate)
             updateSCValues();
-        return scPitches.length;
+        return numNotes;
     }
 
     /**
@@ -571,7 +758,9 @@ public class Phrase implements JSONable {
      * @return A copy of the Phrase's pitch values.
      */
     public float[] getSCPitches() {
-        return Arrays.copyOf(scPitches, scPitches.length);
+        if (!scArraysUpToDate)
+            updateSCValues();
+        return Arrays.copyOf(scPitches, numNotes);
     }
 
     /**
@@ -580,7 +769,9 @@ public class Phrase implements JSONable {
      * @return A copy of the Phrase's dynamic values.
      */
     public float[] getSCDynamics() {
-        return Arrays.copyOf(scDynamics, scDynamics.length);
+        if (!scArraysUpToDate)
+            updateSCValues();
+        return Arrays.copyOf(scDynamics, numNotes);
     }
 
     /**
@@ -589,7 +780,9 @@ public class Phrase implements JSONable {
      * @return A copy of the Phrase's duration values.
      */
     public float[] getSCDurations() {
-        return Arrays.copyOf(scDurations, scDurations.length);
+        if (!scArraysUpToDate)
+            updateSCValues();
+        return Arrays.copyOf(scDurations, numNotes);
     }
 
     /**
@@ -598,7 +791,9 @@ public class Phrase implements JSONable {
      * @return A copy of the Phrase's articulation values.
      */
     public float[] getSCArticulations() {
-        return Arrays.copyOf(scArts, scArts.length);
+        if (!scArraysUpToDate)
+            updateSCValues();
+        return Arrays.copyOf(scArts, numNotes);
     }
 
     /**
@@ -607,7 +802,9 @@ public class Phrase implements JSONable {
      * @return A copy of the Phrase's pan values.
      */
     public float[] getSCPans() {
-        return Arrays.copyOf(scPans, scPans.length);
+        if (!scArraysUpToDate)
+            updateSCValues();
+        return Arrays.copyOf(scPans, numNotes);
     }
 
     /**
@@ -623,7 +820,30 @@ public class Phrase implements JSONable {
     public float getPercentDurationOfSCIndex(int scIndex) {
         if (!scArraysUpToDate)
             updateSCValues();
-        return scIndexToPercentDuration[scIndex];
+        return scStartCells[scIndex] / (float) cellTypes.length;
+    }
+
+    /**
+     * Gives the index of the note (or rest) that the cell at the given index
+     * belongs to.
+     * 
+     * @param i
+     *            The index to the phrase's grid representation
+     * @return The index to the phrase's soundcipher representation
+     */
+    private int getSCIndexOfCell(int i) {
+        // binary search for the last note that starts at or before the cell
+        int lo = 0;
+        int hi = numNotes - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (scStartCells[mid] <= i) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
     }
 
     /**
@@ -635,7 +855,7 @@ public class Phrase implements JSONable {
      */
     public void setGridPitch(int i, float pitch) {
         gridPitches[i] = PApplet.constrain(pitch, 0, 127);
-        scArraysUpToDate = false;
+        patchSCValues(i, i);
     }
 
     /**
@@ -657,7 +877,7 @@ public class Phrase implements JSONable {
      */
     public void setGridDynamic(int i, float dynamic) {
         gridDynamics[i] = PApplet.constrain(dynamic, 0, 127);
-        scArraysUpToDate = false;
+        patchSCValues(i, i);
     }
 
     /**
@@ -706,7 +926,7 @@ public class Phrase implements JSONable {
      */
     public boolean setCell(int i, float pitch, float dynamic, int noteType, float art, float pan) {
         if (0 <= i && i < getGridRowSize()) {
-            boolean success = setNoteType(i, noteType);
+            boolean success = assignNoteType(i, noteType);
             if (!success) {
                 return false;
             }
@@ -714,7 +934,7 @@ public class Phrase implements JSONable {
             gridDynamics[i] = dynamic;
             gridArts[i] = art;
             gridPans[i] = pan;
-            scArraysUpToDate = false;
+            patchSCValues(i, i);
             return true;
         } else {
             return false;
@@ -735,6 +955,24 @@ public class Phrase implements JSONable {
      * @return True if the method was successful, false otherwise.
      */
     public boolean setNoteType(int i, int cellType) {
+        boolean success = assignNoteType(i, cellType);
+        if (success) {
+            patchSCValues(i, i);
+        }
+        return success;
+    }
+
+    /**
+     * Does the work of setNoteType(), without updating the phrase's
+     * soundcipher representation.
+     * 
+     * @param i
+     *            The index to the phrase's grid representation
+     * @param cellType
+     *            The value of the type of cell
+     * @return True if the method was successful, false otherwise.
+     */
+    private boolean assignNoteType(int i, int cellType) {
         switch (cellType) {
         case NOTE_START:
             cellTypes[i] = cellType;
@@ -757,7 +995,6 @@ public class Phrase implements JSONable {
             System.err.println("Invalid noteType code given to Phrase.setNoteType()");
             return false;
         }
-        scArraysUpToDate = false;
         return true;
     }
 
@@ -780,7 +1017,7 @@ public class Phrase implements JSONable {
      */
     public void setGridPan(int i, float pan) {
         gridPans[i] = pan;
-        scArraysUpToDate = false;
+        patchSCValues(i, i);
     }
 
     /**
@@ -802,7 +1039,7 @@ public class Phrase implements JSONable {
      */
     public void setGridArt(int i, float art) {
         gridArts[i] = art;
-        scArraysUpToDate = false;
+        patchSCValues(i, i);
     }
 
     /**
@@ -859,6 +1096,17 @@ public class Phrase implements JSONable {
         return scaleRootName;
     }
 
+    /**
+     * Gives the number of times the phrase has been edited. It is meant for
+     * checking whether something derived from the phrase, like a picture of
+     * it, is out of date.
+     * 
+     * @return The modification count.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
     /*********************
      ***** To String *****
      *********************/
@@ -892,8 +1140,8 @@ public class Phrase implements JSONable {
     public String toString() {
         if (!scArraysUpToDate)
             updateSCValues();
-        return "{pitches: " + Arrays.toString(scPitches) + ", dynamics: " + Arrays.toString(scDynamics)
-                + ", durations: " + Arrays.toString(scDurations);
+        return "{pitches: " + Arrays.toString(getSCPitches()) + ", dynamics: " + Arrays.toString(getSCDynamics())
+                + ", durations: " + Arrays.toString(getSCDurations());
     }
 
     /****************************
@@ -0,0 +1,309 @@
+package phasing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import util.SaveService;
+
+/**
+ * A collection of PhrasePictures stored in a single binary file.
+ * 
+ * The file starts with a header (a magic number, a version number, and the
+ * number of entries), followed by an index that gives each entry's name and
+ * where its data is located in the file, followed by the data of every entry.
+ * An entry's data is its styling information followed by its phrase, whose
+ * grid arrays are packed one after another as raw floats and ints.
+ * 
+ * Opening a PhraseLibrary reads the file into memory in one go and parses
+ * only the header and the index, so it is fast no matter how many phrases the
+ * library contains. The PhrasePictures it gives out know only their names at
+ * first. Each one decodes the rest of its entry the first time it is needed.
+ * 
+ * The file is read rather than memory-mapped, because a mapped file can't be
+ * replaced on Windows until the mapping is garbage collected, and the library
+ * is saved over its own file while its PhrasePictures still refer to it.
+ * 
+ * @author James Morrow
+ *
+ */
+public class PhraseLibrary {
+    private static final int MAGIC = 0x50485342; // "PHSB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    // the contents of the file
+    private final ByteBuffer buffer;
+
+    // index
+    private final String[] names;
+    private final int[] offsets, lengths;
+
+    /**************************
+     ***** Initialization *****
+     **************************/
+
+    /**
+     * Opens the PhraseLibrary stored in the given file, reading its index but
+     * none of its entries.
+     * 
+     * @param file
+     *            The file.
+     * @throws IOException
+     *             If the file can't be read or isn't a phrase library.
+     */
+    public PhraseLibrary(File file) throws IOException {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).asReadOnlyBuffer();
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a phrase library.");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version + ".");
+            }
+
+            int numEntries = buffer.getInt();
+            names = new String[numEntries];
+            offsets = new int[numEntries];
+            lengths = new int[numEntries];
+            for (int i = 0; i < numEntries; i++) {
+                offsets[i] = buffer.getInt();
+                lengths[i] = buffer.getInt();
+                names[i] = getString(buffer);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is corrupt.", e);
+        }
+    }
+
+    /*******************************
+     ***** Getters and Setters *****
+     *******************************/
+
+    /**
+     * 
+     * @return The number of PhrasePictures in the library.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gives the name of the ith PhrasePicture, without decoding it.
+     * 
+     * @param i
+     *            The index.
+     * @return The name.
+     */
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Gives the ith PhrasePicture, without decoding it. It will decode itself
+     * when it is first needed.
+     * 
+     * @param i
+     *            The index.
+     * @return A new PhrasePicture.
+     */
+    public PhrasePicture get(int i) {
+        return new PhrasePicture(names[i], this, i);
+    }
+
+    /**
+     * Decodes the ith PhrasePicture.
+     * 
+     * @param i
+     *            The index.
+     * @return A new, fully decoded PhrasePicture.
+     */
+    PhrasePicture decode(int i) {
+        ByteBuffer entry = slice(i);
+
+        float blendAmt = entry.getFloat();
+        int noteStyleType = entry.getInt();
+
+        float unitDuration = entry.getFloat();
+        float defaultArt = entry.getFloat();
+        float defaultPan = entry.getFloat();
+        String scaleClassName = getString(entry);
+        String scaleRootName = getString(entry);
+        int n = entry.getInt();
+        float[] gridPitches = getFloats(entry, n);
+        float[] gridDynamics = getFloats(entry, n);
+        float[] gridArts = getFloats(entry, n);
+        float[] gridPans = getFloats(entry, n);
+        int[] cellTypes = new int[n];
+        entry.asIntBuffer().get(cellTypes);
+
+        Phrase phrase = new Phrase(gridPitches, gridDynamics, cellTypes, gridArts, gridPans, defaultArt, defaultPan,
+                scaleClassName, scaleRootName);
+        phrase.unitDuration = unitDuration;
+        return new PhrasePicture(phrase, names[i], blendAmt, noteStyleType);
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index.
+     * @return A read-only view of the ith entry's data.
+     */
+    private ByteBuffer slice(int i) {
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(offsets[i]);
+        entry.limit(offsets[i] + lengths[i]);
+        return entry.slice();
+    }
+
+    /*******************
+     ***** Writing *****
+     *******************/
+
+    /**
+     * Writes the given PhrasePictures to the given file as a phrase library.
+     * The library is written to a temporary file first, which then replaces
+     * the given file, so the given file is never left half-written.
+     * 
+     * @param file
+     *            The file to write to.
+     * @param phrasePictures
+     *            The PhrasePictures.
+     * @throws IOException
+     *             If the file can't be written.
+     */
+    public static void write(File file, List<PhrasePicture> phrasePictures) throws IOException {
+        SaveService.writeAtomically(toBytes(phrasePictures), file);
+    }
+
+    /**
+     * Encodes the given PhrasePictures as the contents of a phrase library
+     * file.
+     * 
+     * The data of a PhrasePicture that still matches its entry in the library
+     * it came from is copied over from that library as it is, whether or not
+     * it has been decoded.
+     * 
+     * @param phrasePictures
+     *            The PhrasePictures.
+     * @return The contents of the file.
+     */
+    public static byte[] toBytes(List<PhrasePicture> phrasePictures) {
+        int numEntries = phrasePictures.size();
+        byte[][] encodedNames = new byte[numEntries][];
+        byte[][] entries = new byte[numEntries][];
+        int indexSize = 0;
+        int dataSize = 0;
+        for (int i = 0; i < numEntries; i++) {
+            PhrasePicture p = phrasePictures.get(i);
+            encodedNames[i] = p.getName().getBytes(StandardCharsets.UTF_8);
+            if (p.matchesLibraryEntry()) {
+                PhraseLibrary source = p.getLibrary();
+                int j = p.getLibraryIndex();
+                entries[i] = new byte[source.lengths[j]];
+                source.slice(j).get(entries[i]);
+            } else {
+                entries[i] = encode(p);
+            }
+            indexSize += 10 + encodedNames[i].length;
+            dataSize += entries[i].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + indexSize + dataSize);
+
+        // header
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(numEntries);
+
+        // index
+        int offset = HEADER_SIZE + indexSize;
+        for (int i = 0; i < numEntries; i++) {
+            out.putInt(offset);
+            out.putInt(entries[i].length);
+            out.putShort((short) encodedNames[i].length);
+            out.put(encodedNames[i]);
+            offset += entries[i].length;
+        }
+
+        // entries
+        for (int i = 0; i < numEntries; i++) {
+            out.put(entries[i]);
+        }
+        return out.array();
+    }
+
+    /**
+     * Encodes the given PhrasePicture's data (everything but its name, which
+     * goes in the index).
+     * 
+     * @param p
+     *            The PhrasePicture.
+     * @return The encoded data.
+     */
+    private static byte[] encode(PhrasePicture p) {
+        Phrase phrase = p.getPhrase();
+        byte[] scaleClassName = phrase.getScaleClassName().getBytes(StandardCharsets.UTF_8);
+        byte[] scaleRootName = phrase.getScaleRootName().getBytes(StandardCharsets.UTF_8);
+        int n = phrase.getGridRowSize();
+
+        ByteBuffer entry = ByteBuffer
+                .allocate(28 + scaleClassName.length + scaleRootName.length + 5 * 4 * n);
+        entry.putFloat(p.getBlendAmt());
+        entry.putInt(p.getNoteStyleType());
+
+        entry.putFloat(phrase.unitDuration);
+        entry.putFloat(phrase.defaultArt);
+        entry.putFloat(phrase.defaultPan);
+        entry.putShort((short) scaleClassName.length);
+        entry.put(scaleClassName);
+        entry.putShort((short) scaleRootName.length);
+        entry.put(scaleRootName);
+        entry.putInt(n);
+        for (int i = 0; i < n; i++) {
+            entry.putFloat(phrase.gridPitches[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            entry.putFloat(phrase.gridDynamics[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            entry.putFloat(phrase.gridArts[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            entry.putFloat(phrase.gridPans[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            entry.putInt(phrase.cellTypes[i]);
+        }
+        return entry.array();
+    }
+
+    /*****************************
+     ***** Utility Functions *****
+     *****************************/
+
+    /**
+     * Reads a string, stored as its length in bytes followed by its UTF-8
+     * bytes, and advances the buffer past it.
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads n floats and advances the buffer past them.
+     */
+    private static float[] getFloats(ByteBuffer buffer, int n) {
+        float[] xs = new float[n];
+        buffer.asFloatBuffer().get(xs);
+        buffer.position(buffer.position() + 4 * n);
+        return xs;
+    }
+}
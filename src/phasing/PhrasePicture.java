@@ -1,10 +1,14 @@
 package phasing;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import geom.Polygon;
 import geom.Rect;
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.data.JSONObject;
 import util.JSONable;
 
@@ -26,19 +30,41 @@ public class PhrasePicture implements JSONable {
     private DrawNote drawNoteFunc, drawRestFunc;
     private float blendAmt;
 
+    // where the phrase and style data are decoded from (if they came from a
+    // PhraseLibrary) and whether or not they currently are decoded
+    private PhraseLibrary library;
+    private int libraryIndex;
+    private boolean decoded = true;
+    // once the phrase has been handed out it may be edited, so it can no
+    // longer be evicted and decoded again
+    private boolean phraseHandedOut;
+
     // style parameters
     private static final int CIRCLE = 0, DIAMOND = 1, SQUARE = 2;
     private final DrawNote addVertexFunc = new AddVertex();
     private final DrawNote endShapeFunc = new EndShape();
-    private final Style drawStyle = pa -> {
-        pa.noStroke();
-        pa.fill(pa.getBlendedColor(blendAmt));
+    private final Style drawStyle = g -> {
+        g.noStroke();
+        g.fill(PhasesPApplet.getBlendedColor(blendAmt));
     };
-    private final Style restStyle = pa -> {
-        pa.stroke(pa.getBlendedColor(blendAmt));
-        pa.fill(255);
+    private final Style restStyle = g -> {
+        g.stroke(PhasesPApplet.getBlendedColor(blendAmt));
+        g.fill(255);
     };
 
+    // the picture, as it was last drawn, and what it was drawn from
+    private PGraphics thumbnail;
+    private int thumbnailModCount, thumbnailColor;
+
+    // the PhrasePictures that have thumbnails, from least recently drawn to
+    // most recently drawn (only used on the animation thread)
+    private static final int MAX_THUMBNAILS = 64;
+    private static final LinkedHashMap<PhrasePicture, Boolean> thumbnailed = new LinkedHashMap<PhrasePicture, Boolean>(
+            16, 0.75f, true);
+    // thumbnails let go of on other threads, which have to be disposed of on
+    // the animation thread since they hold OpenGL resources
+    private static final ConcurrentLinkedQueue<PGraphics> thumbnailsToDispose = new ConcurrentLinkedQueue<PGraphics>();
+
     /**************************
      ***** Initialization *****
      **************************/
@@ -84,10 +110,13 @@ public class PhrasePicture implements JSONable {
      *            The PhrasePicture to copy.
      */
     public PhrasePicture(PhrasePicture phrasePicture) {
-        this.phrase = new Phrase(phrasePicture.phrase);
-        this.name = PhasesPApplet.phrasePictureNameGenerator.getUniqueNameFrom(phrasePicture.name);
-        this.blendAmt = phrasePicture.blendAmt;
-        this.initDrawNoteFuncs(phrasePicture.noteStyleType());
+        synchronized (phrasePicture) {
+            phrasePicture.decode();
+            this.phrase = new Phrase(phrasePicture.phrase);
+            this.name = PhasesPApplet.phrasePictureNameGenerator.getUniqueNameFrom(phrasePicture.name);
+            this.blendAmt = phrasePicture.blendAmt;
+            this.initDrawNoteFuncs(phrasePicture.noteStyleType());
+        }
     }
 
     /**
@@ -103,8 +132,85 @@ public class PhrasePicture implements JSONable {
         this.name = json.getString("name", "?");
     }
 
+    /**
+     * Constructs a PhrasePicture from already known styling information, as
+     * when it is decoded from a PhraseLibrary.
+     * 
+     * @param phrase
+     *            The Phrase.
+     * @param name
+     *            The identifier of the PhrasePicture.
+     * @param blendAmt
+     *            The amount by which the PhrasePicture's color is blended.
+     * @param noteStyleType
+     *            The code (CIRCLE, DIAMOND, or SQUARE) for how notes are drawn.
+     */
+    PhrasePicture(Phrase phrase, String name, float blendAmt, int noteStyleType) {
+        this.phrase = phrase;
+        this.name = name;
+        this.blendAmt = blendAmt;
+        initDrawNoteFuncs(noteStyleType);
+    }
+
+    /**
+     * Constructs a PhrasePicture whose phrase and styling information will be
+     * decoded from the given PhraseLibrary the first time they are needed.
+     * 
+     * @param name
+     *            The identifier of the PhrasePicture.
+     * @param library
+     *            The PhraseLibrary.
+     * @param libraryIndex
+     *            The index of the PhrasePicture's entry in the PhraseLibrary.
+     */
+    PhrasePicture(String name, PhraseLibrary library, int libraryIndex) {
+        this.name = name;
+        this.library = library;
+        this.libraryIndex = libraryIndex;
+        this.decoded = false;
+    }
+
+    /**
+     * Decodes the phrase and styling information, if they haven't been
+     * decoded yet. This may be invoked from any thread.
+     */
+    synchronized void decode() {
+        if (!decoded) {
+            PhrasePicture p = library.decode(libraryIndex);
+            this.phrase = p.phrase;
+            this.blendAmt = p.blendAmt;
+            initDrawNoteFuncs(p.noteStyleType());
+            decoded = true;
+        }
+    }
+
+    /**
+     * Lets go of the decoded phrase and styling information, so they can be
+     * garbage collected, if they can be decoded again exactly as they are.
+     * That is only the case if they came from a PhraseLibrary and the phrase
+     * hasn't been handed out (and so can't have been edited).
+     * 
+     * @return True if the PhrasePicture was evicted, false otherwise.
+     */
+    synchronized boolean evict() {
+        if (decoded && matchesLibraryEntry()) {
+            phrase = null;
+            drawNoteFunc = null;
+            drawRestFunc = null;
+            if (thumbnail != null) {
+                thumbnailsToDispose.add(thumbnail);
+                thumbnail = null;
+            }
+            decoded = false;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     @Override
-    public JSONObject toJSON() {
+    public synchronized JSONObject toJSON() {
+        decode();
         JSONObject json = new JSONObject();
         json.setJSONObject("phrase", phrase.toJSON());
         json.setFloat("blendAmt", blendAmt);
@@ -159,6 +265,12 @@ public class PhrasePicture implements JSONable {
     /**
      * Draws the Phrase within the given rect to the given PApplet.
      * 
+     * The picture is drawn offscreen once and then reused, until the phrase,
+     * the size of the rect, or the color of the picture changes. Only the
+     * most recently drawn PhrasePictures keep their pictures.
+     * 
+     * This must be invoked from the animation thread.
+     * 
      * @param rect
      *            The area in which to draw the Phrase.
      * @param pa
@@ -166,16 +278,93 @@ public class PhrasePicture implements JSONable {
      *            from.
      */
     public void draw(Rect rect, PhasesPApplet pa) {
+        disposeThumbnails();
+        synchronized (this) {
+            decode();
+            int w = PApplet.ceil(rect.getWidth());
+            int h = PApplet.ceil(rect.getHeight());
+            int modCount = phrase.getModCount();
+            int color = PhasesPApplet.getBlendedColor(blendAmt);
+
+            if (thumbnail == null || thumbnail.width != w || thumbnail.height != h) {
+                if (thumbnail != null) {
+                    thumbnail.dispose();
+                }
+                thumbnail = pa.createGraphics(w, h, PApplet.P2D);
+                drawThumbnail(modCount, color);
+            } else if (thumbnailModCount != modCount || thumbnailColor != color) {
+                drawThumbnail(modCount, color);
+            }
+
+            pa.image(thumbnail, rect.getX1(), rect.getY1());
+        }
+        touchThumbnail(this);
+    }
+
+    /**
+     * Draws the Phrase to the thumbnail, filling it up.
+     * 
+     * @param modCount
+     *            The modification count of the Phrase.
+     * @param color
+     *            The color to draw the Phrase in.
+     */
+    private void drawThumbnail(int modCount, int color) {
+        Rect rect = new Rect(0, 0, thumbnail.width, thumbnail.height, PApplet.CORNER);
+        thumbnail.beginDraw();
+        thumbnail.clear();
+
         // draw lines between notes
-        pa.strokeWeight(1);
-        pa.stroke(pa.getBlendedColor(blendAmt));
-        pa.noFill();
-        pa.beginShape();
-        iterateNotes(addVertexFunc, endShapeFunc, rect, pa);
-        pa.endShape();
+        thumbnail.strokeWeight(1);
+        thumbnail.stroke(color);
+        thumbnail.noFill();
+        thumbnail.beginShape();
+        iterateNotes(addVertexFunc, endShapeFunc, rect, thumbnail);
+        thumbnail.endShape();
 
         // draw notes
-        iterateNotes(drawNoteFunc, drawRestFunc, rect, pa);
+        iterateNotes(drawNoteFunc, drawRestFunc, rect, thumbnail);
+
+        thumbnail.endDraw();
+        thumbnailModCount = modCount;
+        thumbnailColor = color;
+    }
+
+    /**
+     * Records that the given PhrasePicture's thumbnail has just been drawn,
+     * disposing of the least recently drawn thumbnails if there are too many.
+     * 
+     * @param p
+     *            The PhrasePicture.
+     */
+    private static void touchThumbnail(PhrasePicture p) {
+        thumbnailed.put(p, Boolean.TRUE);
+        Iterator<PhrasePicture> it = thumbnailed.keySet().iterator();
+        while (thumbnailed.size() > MAX_THUMBNAILS) {
+            PhrasePicture eldest = it.next();
+            it.remove();
+            eldest.disposeThumbnail();
+        }
+    }
+
+    /**
+     * Disposes of this PhrasePicture's thumbnail, if it has one.
+     */
+    private synchronized void disposeThumbnail() {
+        if (thumbnail != null) {
+            thumbnail.dispose();
+            thumbnail = null;
+        }
+    }
+
+    /**
+     * Disposes of the thumbnails that were let go of on other threads.
+     */
+    private static void disposeThumbnails() {
+        PGraphics g;
+        while ((g = thumbnailsToDispose.poll()) != null) {
+            g.dispose();
+        }
     }
 
     /**
@@ -188,17 +377,17 @@ public class PhrasePicture implements JSONable {
      *            The function used to draw rests.
      * @param rect
      *            The area in which to draw the Phrase's notes.
-     * @param pa
-     *            The PApplet to draw to.
+     * @param g
+     *            The PGraphics to draw to.
      */
-    private void iterateNotes(DrawNote drawNote, DrawNote drawRest, Rect rect, PhasesPApplet pa) {
-        float x1 = pa.lerp(rect.getX1(), rect.getX2(), 0.1f);
-        float x2 = pa.lerp(rect.getX2(), rect.getX1(), 0.1f);
+    private void iterateNotes(DrawNote drawNote, DrawNote drawRest, Rect rect, PGraphics g) {
+        float x1 = PApplet.lerp(rect.getX1(), rect.getX2(), 0.1f);
+        float x2 = PApplet.lerp(rect.getX2(), rect.getX1(), 0.1f);
         float x = x1;
         float dx = (x2 - x1) / phrase.getNumNotes();
 
-        float y2 = pa.lerp(rect.getY2(), rect.getY1(), 0.15f);
-        float y1 = pa.lerp(rect.getY1(), rect.getY2(), 0.15f);
+        float y2 = PApplet.lerp(rect.getY2(), rect.getY1(), 0.15f);
+        float y1 = PApplet.lerp(rect.getY1(), rect.getY2(), 0.15f);
 
         float radius = 0.025f * rect.getHeight();
 
@@ -206,9 +395,9 @@ public class PhrasePicture implements JSONable {
             int pitch = phrase.getSCPitch(i);
             float y = PApplet.map(pitch, phrase.minPitch(), phrase.maxPitch(), y2, y1);
             if (phrase.getSCDynamic(i) > 0) {
-                drawNote.draw(x, y, radius, pa);
+                drawNote.draw(x, y, radius, g);
             } else {
-                drawRest.draw(x, pa.lerp(y1, y2, 0.5f), radius, pa);
+                drawRest.draw(x, PApplet.lerp(y1, y2, 0.5f), radius, g);
             }
             x += dx;
         }
@@ -219,14 +408,14 @@ public class PhrasePicture implements JSONable {
      *************************/
 
     /**
-     * Changes a PhasesPApplet state in order to change the way it styles
-     * graphics (such as changes in fill color, stroke color, etc.).
+     * Changes a PGraphics state in order to change the way it styles graphics
+     * (such as changes in fill color, stroke color, etc.).
      * 
      * @author James Morrow
      *
      */
     private interface Style {
-        void apply(PhasesPApplet pa);
+        void apply(PGraphics g);
     }
 
     /*********************************
@@ -235,13 +424,13 @@ public class PhrasePicture implements JSONable {
 
     /**
      * Draws a shape to a coordinate in space (x,y) with a radius r to a
-     * PhasesPApplet pa.
+     * PGraphics g.
      * 
      * @author James Morrow
      *
      */
     private interface DrawNote {
-        void draw(float x, float y, float r, PhasesPApplet pa);
+        void draw(float x, float y, float r, PGraphics g);
     }
 
     /**
@@ -257,10 +446,10 @@ public class PhrasePicture implements JSONable {
             this.style = style;
         }
 
-        public void draw(float x, float y, float r, PhasesPApplet pa) {
-            style.apply(pa);
-            pa.ellipseMode(pa.RADIUS);
-            pa.ellipse(x, y, r, r);
+        public void draw(float x, float y, float r, PGraphics g) {
+            style.apply(g);
+            g.ellipseMode(PApplet.RADIUS);
+            g.ellipse(x, y, r, r);
         }
     }
 
@@ -277,10 +466,10 @@ public class PhrasePicture implements JSONable {
             this.style = style;
         }
 
-        public void draw(float x, float y, float r, PhasesPApplet pa) {
-            style.apply(pa);
+        public void draw(float x, float y, float r, PGraphics g) {
+            style.apply(g);
             r *= 1.25f;
-            Polygon.drawPolygon(x, y, r, r, 4, 0, pa);
+            Polygon.drawPolygon(x, y, r, r, 4, 0, g);
         }
     }
 
@@ -297,22 +486,22 @@ public class PhrasePicture implements JSONable {
             this.style = style;
         }
 
-        public void draw(float x, float y, float r, PhasesPApplet pa) {
-            style.apply(pa);
+        public void draw(float x, float y, float r, PGraphics g) {
+            style.apply(g);
             r *= 1.25f;
-            Polygon.drawPolygon(x, y, r, r, 4, pa.QUARTER_PI, pa);
+            Polygon.drawPolygon(x, y, r, r, 4, PApplet.QUARTER_PI, g);
         }
     }
 
     /**
-     * Calls pa.vertex(x,y) on the PhasesPApplet pa.
+     * Calls g.vertex(x,y) on the PGraphics g.
      * 
      * @author James Morrow
      *
      */
     private class AddVertex implements DrawNote {
-        public void draw(float x, float y, float r, PhasesPApplet pa) {
-            pa.vertex(x, y);
+        public void draw(float x, float y, float r, PGraphics g) {
+            g.vertex(x, y);
         }
     }
 
@@ -323,9 +512,9 @@ public class PhrasePicture implements JSONable {
      *
      */
     private class EndShape implements DrawNote {
-        public void draw(float x, float y, float r, PhasesPApplet pa) {
-            pa.endShape();
-            pa.beginShape();
+        public void draw(float x, float y, float r, PGraphics g) {
+            g.endShape();
+            g.beginShape();
         }
     }
 
@@ -336,7 +525,7 @@ public class PhrasePicture implements JSONable {
      *
      */
     private class DoNothing implements DrawNote {
-        public void draw(float x, float y, float r, PhasesPApplet pa) {
+        public void draw(float x, float y, float r, PGraphics g) {
         }
     }
 
@@ -348,10 +537,31 @@ public class PhrasePicture implements JSONable {
      * 
      * @return The phrase this PhrasePicture contains.
      */
-    public Phrase getPhrase() {
+    public synchronized Phrase getPhrase() {
+        decode();
+        phraseHandedOut = true;
         return phrase;
     }
 
+    /**
+     * Gives a snapshot of the phrase this PhrasePicture contains, for reading
+     * it without editing it. Unlike getPhrase(), this doesn't stop the
+     * PhrasePicture from being evicted, and if the PhrasePicture wasn't
+     * decoded beforehand, it is evicted again afterward.
+     * 
+     * @return The snapshot.
+     */
+    synchronized PhraseSnapshot getSnapshot() {
+        boolean wasDecoded = decoded;
+        decode();
+        phrase.publishSnapshot();
+        PhraseSnapshot snapshot = phrase.getSnapshot();
+        if (!wasDecoded) {
+            evict();
+        }
+        return snapshot;
+    }
+
     /**
      * 
      * @return The name of this PhrasePicture.
@@ -360,6 +570,61 @@ public class PhrasePicture implements JSONable {
         return name;
     }
 
+    /**
+     * 
+     * @return The amount by which this PhrasePicture's color is blended.
+     */
+    synchronized float getBlendAmt() {
+        decode();
+        return blendAmt;
+    }
+
+    /**
+     * 
+     * @return The code (CIRCLE, DIAMOND, or SQUARE) for how this
+     *         PhrasePicture's notes are drawn.
+     */
+    synchronized int getNoteStyleType() {
+        decode();
+        return noteStyleType();
+    }
+
+    /**
+     * 
+     * @return True if the phrase and styling information have been decoded,
+     *         false if they are waiting in a PhraseLibrary.
+     */
+    synchronized boolean isDecoded() {
+        return decoded;
+    }
+
+    /**
+     * 
+     * @return True if the phrase and styling information are exactly what is
+     *         stored in this PhrasePicture's PhraseLibrary entry, false
+     *         otherwise.
+     */
+    synchronized boolean matchesLibraryEntry() {
+        return library != null && !phraseHandedOut;
+    }
+
+    /**
+     * 
+     * @return The PhraseLibrary the phrase and styling information are
+     *         decoded from (null if they didn't come from one).
+     */
+    PhraseLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * 
+     * @return The index of this PhrasePicture's entry in its PhraseLibrary.
+     */
+    int getLibraryIndex() {
+        return libraryIndex;
+    }
+
     /**
      * Sets the name of this PhrasePicture.
      * 
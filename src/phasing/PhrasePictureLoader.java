@@ -0,0 +1,105 @@
+package phasing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides which PhrasePictures are kept decoded in memory.
+ * 
+ * PhrasePictures that come from a PhraseLibrary start out knowing only their
+ * names. A PhrasePictureLoader decodes the ones that are about to be shown
+ * (such as the next page of the phrase repository) ahead of time, on a
+ * background thread, so that showing them doesn't hold up the animation
+ * thread. It also remembers which decoded PhrasePictures were used least
+ * recently, and evicts them once there are too many, so that the memory used
+ * doesn't grow with the size of the library.
+ * 
+ * @author James Morrow
+ *
+ */
+public class PhrasePictureLoader {
+    // the decoded PhrasePictures, from least recently used to most recently
+    // used (guarded by this)
+    private final LinkedHashMap<PhrasePicture, Boolean> decoded = new LinkedHashMap<PhrasePicture, Boolean>(16,
+            0.75f, true);
+    private int capacity;
+
+    // background thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "PhrasePictureLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 
+     * @param capacity
+     *            The number of decoded PhrasePictures to keep in memory
+     *            before evicting the least recently used ones.
+     */
+    public PhrasePictureLoader(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Decodes the given PhrasePictures on the background thread, in order.
+     * 
+     * @param phrasePictures
+     *            The PhrasePictures.
+     */
+    public void prefetch(List<PhrasePicture> phrasePictures) {
+        for (PhrasePicture p : phrasePictures) {
+            if (!p.isDecoded()) {
+                executor.execute(() -> {
+                    p.decode();
+                    touch(p);
+                });
+            }
+        }
+    }
+
+    /**
+     * Records that the given PhrasePicture has just been used, evicting the
+     * least recently used PhrasePictures if there are too many decoded ones.
+     * 
+     * @param p
+     *            The PhrasePicture.
+     */
+    public synchronized void touch(PhrasePicture p) {
+        if (p.matchesLibraryEntry()) {
+            decoded.put(p, Boolean.TRUE);
+            evictExcess();
+        } else {
+            // it can't be evicted anyway
+            decoded.remove(p);
+        }
+    }
+
+    /**
+     * Sets the number of decoded PhrasePictures to keep in memory.
+     * 
+     * @param capacity
+     *            The number of PhrasePictures.
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        evictExcess();
+    }
+
+    /**
+     * Evicts least recently used PhrasePictures until there are no more than
+     * capacity of them.
+     */
+    private void evictExcess() {
+        Iterator<Map.Entry<PhrasePicture, Boolean>> it = decoded.entrySet().iterator();
+        while (decoded.size() > capacity && it.hasNext()) {
+            PhrasePicture p = it.next().getKey();
+            it.remove();
+            p.evict();
+        }
+    }
+}
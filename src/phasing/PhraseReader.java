@@ -8,8 +8,16 @@ import java.lang.reflect.Method;
  * given callback whenever it reads a new note, passing itself as an argument to
  * the callback.
  * 
+ * If more than one note begins within the stretch of musical time covered by
+ * an update (because a frame took longer than a note, say), the callback is
+ * invoked for every one of those notes, in order, and each one can tell how
+ * long ago it really began. Alternatively, the reader can coalesce them, so
+ * that the callback is only invoked for the last of them.
+ * 
  * Should be able to cope and continue to read the phrase even while the phrase
- * changes state.
+ * changes state. It does so by reading the phrase's most recently published
+ * snapshot, which it picks up anew on every update, rather than the phrase
+ * itself.
  * 
  * @author James Morrow
  *
@@ -18,10 +26,15 @@ public class PhraseReader {
     // data
     private int id;
     private Phrase phrase;
+    private PhraseSnapshot snapshot;
 
     // bookkeeping
     private int noteIndex;
     private float noteTimeTillNextNote;
+    private float lateness;
+
+    // options
+    private boolean coalescing;
 
     PhraseReaderListener listener;
 
@@ -41,43 +54,87 @@ public class PhraseReader {
         this.id = id;
         this.listener = listener;
 
+        phrase.publishSnapshot();
+        snapshot = phrase.getSnapshot();
+
         noteIndex = -1;
         noteTimeTillNextNote = 0;
     }
 
     /**
      * Reads some more of the phrase. How much is read is determined by the
-     * dNotept argument. Calls the callback if it reads a new note.
+     * dNotept argument. Calls the callback for every new note it reads (or,
+     * if it is coalescing, for the last new note it reads).
+     * 
+     * If the amount read spans the whole phrase more than once, the earlier
+     * repetitions are skipped, so at most one repetition's worth of notes is
+     * read.
      * 
      * @param dNotept
      *            The amount to read, in terms of musical time.
      */
     public void update(float dNotept) {
+        snapshot = phrase.getSnapshot();
         noteTimeTillNextNote -= dNotept;
 
-        if (noteTimeTillNextNote <= 0 && phrase.getNumNotes() > 0) {
-            noteIndex = (noteIndex + 1) % phrase.getNumNotes();
-            noteTimeTillNextNote = noteTimeTillNextNote + phrase.getSCDuration(noteIndex);
-            listener.noteEvent(this);
+        int numNotes = snapshot.getNumNotes();
+        if (noteTimeTillNextNote > 0 || numNotes == 0) {
+            return;
         }
+
+        float totalDuration = snapshot.getTotalDuration();
+        if (totalDuration > 0 && noteTimeTillNextNote <= -totalDuration) {
+            noteTimeTillNextNote += (float) Math.floor(-noteTimeTillNextNote / totalDuration) * totalDuration;
+        }
+
+        do {
+            noteIndex = (noteIndex + 1) % numNotes;
+            lateness = -noteTimeTillNextNote;
+            noteTimeTillNextNote += snapshot.getDuration(noteIndex);
+            if (!coalescing || noteTimeTillNextNote > 0) {
+                listener.noteEvent(this);
+            }
+        } while (noteTimeTillNextNote <= 0 && totalDuration > 0);
+    }
+
+    /**
+     * Reads the note at the given index of the given snapshot, no matter how
+     * much musical time has passed, and invokes the callback. This is for when
+     * something other than update() keeps time, like a PhraseScheduler.
+     * 
+     * @param noteIndex
+     *            The index of the note to read.
+     * @param snapshot
+     *            The snapshot of the phrase that the note belongs to.
+     */
+    void readNote(int noteIndex, PhraseSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.noteIndex = noteIndex;
+        noteTimeTillNextNote = snapshot.getDuration(noteIndex);
+        lateness = 0;
+        listener.noteEvent(this);
     }
 
     /**
      * After a period of neglect (in which update has not been invoked) this
-     * method informs the PhraseReader of where to start reading again.
+     * method informs the PhraseReader of where to start reading again. The
+     * note at that place is found by binary searching the onsets of the
+     * phrase's notes, so this takes the same short time wherever the place is.
      * 
      * @param notept
      *            The place at which to start reading again.
      */
     public void wakeUp(float notept) {
+        snapshot = phrase.getSnapshot();
         noteIndex = -1;
         noteTimeTillNextNote = -notept;
+        lateness = 0;
 
-        if (notept != 0 && phrase.getNumNotes() > 0) {
-            while (noteTimeTillNextNote <= 0) {
-                noteIndex = (noteIndex + 1) % phrase.getNumNotes();
-                noteTimeTillNextNote += phrase.getSCDuration(noteIndex);
-            }
+        float totalDuration = snapshot.getTotalDuration();
+        if (notept != 0 && snapshot.getNumNotes() > 0 && totalDuration > 0) {
+            float phraseNotept = PhasesPApplet.remainder(notept, totalDuration);
+            noteIndex = snapshot.getNoteIndexAt(phraseNotept);
+            noteTimeTillNextNote = snapshot.getOnset(noteIndex) + snapshot.getDuration(noteIndex) - phraseNotept;
         }
     }
 
@@ -97,6 +154,52 @@ public class PhraseReader {
         return noteIndex;
     }
 
+    /**
+     * Gives how long ago the note the phrase reader is currently reading
+     * began, as of the end of the stretch of musical time covered by the
+     * update that read it. This is 0 for a note that began right at the end of
+     * the update, and is at most the amount the update read. So the note's
+     * exact timestamp is the time at the end of the update minus this.
+     * 
+     * @return How long ago the note began, in terms of musical time.
+     */
+    public float getLateness() {
+        return lateness;
+    }
+
+    /**
+     * Sets whether or not the phrase reader coalesces the notes it reads in
+     * one update, so that the callback is only invoked for the last of them.
+     * It doesn't coalesce them by default.
+     * 
+     * @param coalescing
+     *            True to coalesce, false to invoke the callback for every
+     *            note.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * 
+     * @return True if the phrase reader coalesces the notes it reads in one
+     *         update, false if it invokes the callback for every note.
+     */
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Gives the snapshot of the phrase the PhraseReader is currently reading.
+     * The note index given by getNoteIndex() always refers to a note in this
+     * snapshot.
+     * 
+     * @return The snapshot
+     */
+    public PhraseSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * 
      * @author James Morrow
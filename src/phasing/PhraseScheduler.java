@@ -0,0 +1,298 @@
+package phasing;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import phasing.PhraseReader.PhraseReaderListener;
+
+/**
+ * Plays a phrase in real time on a thread of its own.
+ * 
+ * Where a PhraseReader only notices a note when its update method happens to
+ * be invoked (once per frame), a PhraseScheduler computes exactly when each
+ * note should begin, from a monotonic clock, the tempo, and the onsets of the
+ * phrase's notes. It sleeps until that moment, then invokes its
+ * PhraseSchedulerListener right away, on the scheduler thread. This is the
+ * place to start sounds, because it doesn't depend on the frame rate.
+ * 
+ * Visuals shouldn't be drawn from the scheduler thread, so every note is also
+ * queued up as a note event. Invoking dispatchNoteEvents() (once per frame,
+ * from the animation thread) passes the queued note events to a
+ * PhraseReaderListener, by way of a PhraseReader that follows along with the
+ * scheduler.
+ * 
+ * Like a PhraseReader, the scheduler reads the phrase's most recently
+ * published snapshot, so the phrase can be edited while it is being played.
+ * 
+ * @author James Morrow
+ *
+ */
+public class PhraseScheduler {
+    // how long before an onset to stop sleeping and start yielding
+    private static final long SPIN_NANOS = 500000;
+    // how long to sleep when there is nothing to play
+    private static final long IDLE_NANOS = 10000000;
+
+    // data
+    private final Phrase phrase;
+    private final int id;
+
+    // listeners
+    private final PhraseSchedulerListener listener;
+    private final PhraseReader follower;
+    private final ConcurrentLinkedQueue<NoteEvent> noteEvents = new ConcurrentLinkedQueue<NoteEvent>();
+
+    // time
+    private float bpm = PhasesPApplet.DEFAULT_BPM_1;
+    private volatile Timeline timeline;
+    private double pausedBeat;
+
+    // bookkeeping (owned by the scheduler thread while it is running)
+    private int nextNoteIndex;
+    private double nextOnsetBeat;
+
+    // thread
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * 
+     * @param phrase
+     *            The phrase to play
+     * @param id
+     *            An integer identifying the phrase scheduler
+     * @param listener
+     *            The object to notify, on the scheduler thread, when a note
+     *            begins (may be null)
+     * @param noteEventListener
+     *            The object to pass note events to when dispatchNoteEvents()
+     *            is invoked (may be null)
+     */
+    public PhraseScheduler(Phrase phrase, int id, PhraseSchedulerListener listener,
+            PhraseReaderListener noteEventListener) {
+        this.phrase = phrase;
+        this.id = id;
+        this.listener = listener;
+        this.follower = (noteEventListener != null) ? new PhraseReader(phrase, id, noteEventListener) : null;
+        phrase.publishSnapshot();
+    }
+
+    /****************************
+     ***** Playback Control *****
+     ****************************/
+
+    /**
+     * Starts playing the phrase from where it was last stopped (or from the
+     * beginning, if it was never started).
+     */
+    public void start() {
+        if (!running) {
+            timeline = new Timeline(System.nanoTime(), pausedBeat, bpm);
+            running = true;
+            thread = new Thread(this::run, "PhraseScheduler-" + id);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops playing the phrase, remembering where it stopped.
+     */
+    public void stop() {
+        if (running) {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pausedBeat = timeline.beatAt(System.nanoTime());
+            thread = null;
+        }
+    }
+
+    /**
+     * Stops playing the phrase and moves back to its beginning.
+     */
+    public void reset() {
+        stop();
+        pausedBeat = 0;
+        nextNoteIndex = 0;
+        nextOnsetBeat = 0;
+        noteEvents.clear();
+    }
+
+    /**
+     * Sets the tempo. If the phrase is playing, it carries on from its current
+     * position at the new tempo.
+     * 
+     * @param bpm
+     *            The tempo, in beats per minute.
+     */
+    public void setBPM(float bpm) {
+        this.bpm = bpm;
+        if (running) {
+            long now = System.nanoTime();
+            timeline = new Timeline(now, timeline.beatAt(now), bpm);
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 
+     * @return True if the phrase is being played, false otherwise.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /****************************
+     ***** Scheduler Thread *****
+     ****************************/
+
+    /**
+     * The body of the scheduler thread. Sleeps until the onset of the next
+     * note, then plays it.
+     */
+    private void run() {
+        while (running) {
+            PhraseSnapshot snapshot = phrase.getSnapshot();
+            Timeline timeline = this.timeline;
+            long now = System.nanoTime();
+
+            // nothing to play, so keep pace without playing anything
+            if (snapshot.getNumNotes() == 0) {
+                nextNoteIndex = 0;
+                nextOnsetBeat = timeline.beatAt(now);
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            if (nextNoteIndex >= snapshot.getNumNotes()) {
+                nextNoteIndex = 0;
+            }
+
+            // wait for the onset (waking up early to re-check the timeline,
+            // since the tempo or the phrase may change in the meantime)
+            long remaining = timeline.nanosAt(nextOnsetBeat) - now;
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+                continue;
+            } else if (remaining > 0) {
+                Thread.yield();
+                continue;
+            }
+
+            // play the note, unless the thread fell so far behind that the
+            // note is already over
+            float duration = snapshot.getDuration(nextNoteIndex);
+            if (timeline.beatAt(now) - nextOnsetBeat < duration) {
+                if (listener != null) {
+                    listener.noteOnset(this, nextNoteIndex, snapshot);
+                }
+                if (follower != null) {
+                    noteEvents.add(new NoteEvent(nextNoteIndex, snapshot));
+                }
+            }
+
+            nextOnsetBeat += duration;
+            nextNoteIndex = (nextNoteIndex + 1) % snapshot.getNumNotes();
+        }
+    }
+
+    /**************************
+     ***** Event Dispatch *****
+     **************************/
+
+    /**
+     * Passes every note event that was queued up since the last invocation to
+     * the note event listener, in the order the notes were played. Should be
+     * invoked from the animation thread.
+     */
+    public void dispatchNoteEvents() {
+        NoteEvent e;
+        while ((e = noteEvents.poll()) != null) {
+            follower.readNote(e.noteIndex, e.snapshot);
+        }
+    }
+
+    /**
+     * 
+     * @return The integer identifier of this PhraseScheduler.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 
+     * @return The index of the most recent note passed to the note event
+     *         listener
+     */
+    public int getNoteIndex() {
+        return (follower != null) ? follower.getNoteIndex() : -1;
+    }
+
+    /**
+     * Maps between musical time and the monotonic clock, at a fixed tempo.
+     * 
+     * @author James Morrow
+     *
+     */
+    private static class Timeline {
+        final long startNanos;
+        final double startBeat;
+        final double beatsPerNano;
+
+        Timeline(long startNanos, double startBeat, float bpm) {
+            this.startNanos = startNanos;
+            this.startBeat = startBeat;
+            this.beatsPerNano = bpm / 60e9;
+        }
+
+        double beatAt(long nanos) {
+            return startBeat + (nanos - startNanos) * beatsPerNano;
+        }
+
+        long nanosAt(double beat) {
+            return startNanos + (long) ((beat - startBeat) / beatsPerNano);
+        }
+    }
+
+    /**
+     * A note that was played, waiting to be dispatched.
+     * 
+     * @author James Morrow
+     *
+     */
+    private static class NoteEvent {
+        final int noteIndex;
+        final PhraseSnapshot snapshot;
+
+        NoteEvent(int noteIndex, PhraseSnapshot snapshot) {
+            this.noteIndex = noteIndex;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * 
+     * @author James Morrow
+     *
+     */
+    public static interface PhraseSchedulerListener {
+        /**
+         * Responds to the onset of a note. This is invoked on the scheduler
+         * thread, so it should return quickly and shouldn't draw anything.
+         * 
+         * @param scheduler
+         *            The PhraseScheduler playing the note.
+         * @param noteIndex
+         *            The index of the note.
+         * @param snapshot
+         *            The snapshot of the phrase the note belongs to.
+         */
+        public void noteOnset(PhraseScheduler scheduler, int noteIndex, PhraseSnapshot snapshot);
+    }
+}
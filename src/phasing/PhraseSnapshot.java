@@ -0,0 +1,213 @@
+package phasing;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of a Phrase's soundcipher representation, taken at some
+ * moment in time.
+ * 
+ * A Phrase is edited on the animation thread, but it is read by objects that
+ * play it back, which may run on other threads. Those objects read a
+ * PhraseSnapshot instead of the Phrase itself. Since a snapshot never changes,
+ * a reader that holds on to one always sees a consistent set of notes, even
+ * while the Phrase it came from is being edited.
+ * 
+ * Besides the 5 parallel note arrays, a snapshot stores the time at which each
+ * note begins (its onset), so readers don't have to add up durations.
+ * 
+ * @author James Morrow
+ *
+ */
+public class PhraseSnapshot {
+    // an empty phrase
+    public static final PhraseSnapshot EMPTY = new PhraseSnapshot(new float[] {}, new float[] {}, new float[] {},
+            new float[] {}, new float[] {}, new float[] {}, 0, Float.MAX_VALUE, Float.MIN_VALUE);
+
+    // phrase data, in soundcipher notation
+    private final float[] pitches, dynamics, durations, arts, pans;
+
+    // precomputed timing data
+    private final float[] onsets;
+    private final float totalDuration;
+
+    // pitch range
+    private final float minPitch, maxPitch;
+
+    /**
+     * Constructs a snapshot from the given arrays. The arrays are not copied,
+     * so the caller must not modify them afterward.
+     * 
+     * @param pitches
+     *            The pitch of each note.
+     * @param dynamics
+     *            The dynamic of each note (0 for rests).
+     * @param durations
+     *            The duration of each note.
+     * @param arts
+     *            The articulation of each note.
+     * @param pans
+     *            The pan of each note.
+     * @param onsets
+     *            The time at which each note begins.
+     * @param totalDuration
+     *            The total duration of the phrase.
+     * @param minPitch
+     *            The lowest pitch in the phrase.
+     * @param maxPitch
+     *            The highest pitch in the phrase.
+     */
+    PhraseSnapshot(float[] pitches, float[] dynamics, float[] durations, float[] arts, float[] pans, float[] onsets,
+            float totalDuration, float minPitch, float maxPitch) {
+        this.pitches = pitches;
+        this.dynamics = dynamics;
+        this.durations = durations;
+        this.arts = arts;
+        this.pans = pans;
+        this.onsets = onsets;
+        this.totalDuration = totalDuration;
+        this.minPitch = minPitch;
+        this.maxPitch = maxPitch;
+    }
+
+    /*******************************
+     ***** Getters and Setters *****
+     *******************************/
+
+    /**
+     * 
+     * @return The number of notes in the phrase.
+     */
+    public int getNumNotes() {
+        return pitches.length;
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the note
+     * @return The pitch [0-127] of the note
+     */
+    public int getPitch(int i) {
+        return (int) pitches[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the note
+     * @return The dynamic [0-127] of the note
+     */
+    public float getDynamic(int i) {
+        return dynamics[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the note
+     * @return The duration of the note
+     */
+    public float getDuration(int i) {
+        return durations[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the note
+     * @return The articulation [a multiplier to duration] of the note
+     */
+    public float getArticulation(int i) {
+        return arts[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the note
+     * @return The pan [0-127] of the note
+     */
+    public float getPan(int i) {
+        return pans[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            The index of the note
+     * @return The time, in terms of musical time, at which the note begins
+     */
+    public float getOnset(int i) {
+        return onsets[i];
+    }
+
+    /**
+     * Finds the note that is sounding at the given time, by binary searching
+     * the onsets. That is the last note that begins at or before the given
+     * time.
+     * 
+     * @param notept
+     *            The time, in terms of musical time, between 0 and the total
+     *            duration of the phrase.
+     * @return The index of the note, or -1 if the phrase is empty.
+     */
+    public int getNoteIndexAt(float notept) {
+        int lo = 0;
+        int hi = onsets.length;
+        // find the first note that begins after notept
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (onsets[mid] <= notept) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return (lo > 0) ? lo - 1 : (onsets.length > 0) ? 0 : -1;
+    }
+
+    /**
+     * Tells whether or not the note at the given index is a rest.
+     * 
+     * @param i
+     *            The index of the note
+     * @return True if there is a rest at the given index, false otherwise.
+     */
+    public boolean isRest(int i) {
+        if (0 <= i && i < pitches.length) {
+            return dynamics[i] == 0;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * 
+     * @return The total duration of the phrase
+     */
+    public float getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * 
+     * @return The lowest pitch in the phrase, excluding rests
+     */
+    public float minPitch() {
+        return minPitch;
+    }
+
+    /**
+     * 
+     * @return The highest pitch in the phrase, excluding rests
+     */
+    public float maxPitch() {
+        return maxPitch;
+    }
+
+    @Override
+    public String toString() {
+        return "{pitches: " + Arrays.toString(pitches) + ", dynamics: " + Arrays.toString(dynamics)
+                + ", durations: " + Arrays.toString(durations);
+    }
+}
@@ -17,7 +17,13 @@ public class Scale implements JSONable {
     private final String className;
     private final String[] noteNames;
     private final int[] noteValues;
-    private final JSONObject json;
+    // the JSONObject the scale was loaded from (created when it's first
+    // needed, if the scale wasn't loaded from one)
+    private JSONObject json;
+
+    // the index of each pitch class, counted up from the pitch class of the
+    // first note, or -1 for pitch classes that aren't in the scale
+    private final int[] pitchClassToIndex = new int[12];
 
     /**
      * Constructs a Scale from a JSONObject containing a name, an array of note
@@ -43,6 +49,44 @@ public class Scale implements JSONable {
         }
         this.className = className;
         this.json = json;
+        initPitchClassToIndex();
+    }
+
+    /**
+     * Initializes the table that maps pitch classes to note indices.
+     */
+    private void initPitchClassToIndex() {
+        Arrays.fill(pitchClassToIndex, -1);
+        if (noteValues.length > 0) {
+            for (int i = 0; i < noteValues.length; i++) {
+                int pitchClass = noteValues[i] - noteValues[0];
+                if (0 <= pitchClass && pitchClass < 12 && pitchClassToIndex[pitchClass] == -1) {
+                    pitchClassToIndex[pitchClass] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a Scale from its name, its class name, its note names, and
+     * its note values.
+     * 
+     * @param name
+     *            The name of the scale ("A", for instance).
+     * @param className
+     *            The name of the class this scale belongs to ("Major", for
+     *            instance).
+     * @param noteNames
+     *            The names of the notes.
+     * @param noteValues
+     *            The MIDI pitch values of the notes.
+     */
+    public Scale(String name, String className, String[] noteNames, int[] noteValues) {
+        this.name = name;
+        this.className = className;
+        this.noteNames = noteNames;
+        this.noteValues = noteValues;
+        initPitchClassToIndex();
     }
 
     /**
@@ -58,6 +102,20 @@ public class Scale implements JSONable {
 
     @Override
     public JSONObject toJSON() {
+        if (json == null) {
+            json = new JSONObject();
+            json.setString("name", name);
+            JSONArray jNoteNames = new JSONArray();
+            for (String noteName : noteNames) {
+                jNoteNames.append(noteName);
+            }
+            json.setJSONArray("noteNames", jNoteNames);
+            JSONArray jNoteValues = new JSONArray();
+            for (int noteValue : noteValues) {
+                jNoteValues.append(noteValue);
+            }
+            json.setJSONArray("noteValues", jNoteValues);
+        }
         json.setString("className", className);
         return json;
     }
@@ -100,6 +158,22 @@ public class Scale implements JSONable {
         return noteNames[i];
     }
 
+    /**
+     * 
+     * @return A copy of the names of the notes in the scale
+     */
+    public String[] getNoteNames() {
+        return noteNames.clone();
+    }
+
+    /**
+     * 
+     * @return A copy of the MIDI pitch values of the notes in the scale
+     */
+    public int[] getNoteValues() {
+        return noteValues.clone();
+    }
+
     /**
      * Gives the name for the given pitchValue that applies in the context of
      * this scale. The given pitchValue should be a pitch value within this
@@ -157,15 +231,82 @@ public class Scale implements JSONable {
         int maxPitch = minPitch + 12;
         int value = PhasesPApplet.remainder(midiPitchValue, minPitch, maxPitch);
 
-        for (int i = 0; i < noteValues.length; i++) {
-            if (value == noteValues[i]) {
-                return i + ((midiPitchValue - minPitch) / 12) * noteValues.length;
-            }
+        int i = pitchClassToIndex[value - minPitch];
+        if (i != -1) {
+            return i + ((midiPitchValue - minPitch) / 12) * noteValues.length;
         }
 
         return -1;
     }
 
+    /**
+     * 
+     * @return The pitch class (0 for C, 1 for C#, ..., 11 for B) of the root
+     *         of the scale.
+     */
+    public int getRootPitchClass() {
+        return PhasesPApplet.remainder(noteValues[0], 12);
+    }
+
+    /**
+     * Gives the pitch class of the given note name. The name is a letter
+     * followed by any number of sharps ("#") and flats ("b"). If the name
+     * gives more than one alias for the note, like "A#/Bb", the first alias is
+     * used.
+     * 
+     * @param noteName
+     *            The note name.
+     * @return The pitch class (0 for C, 1 for C#, ..., 11 for B), or -1 if the
+     *         name can't be read.
+     */
+    public static int pitchClassOf(String noteName) {
+        if (noteName == null || noteName.isEmpty()) {
+            return -1;
+        }
+
+        int pitchClass;
+        switch (noteName.charAt(0)) {
+        case 'C':
+            pitchClass = 0;
+            break;
+        case 'D':
+            pitchClass = 2;
+            break;
+        case 'E':
+            pitchClass = 4;
+            break;
+        case 'F':
+            pitchClass = 5;
+            break;
+        case 'G':
+            pitchClass = 7;
+            break;
+        case 'A':
+            pitchClass = 9;
+            break;
+        case 'B':
+            pitchClass = 11;
+            break;
+        default:
+            return -1;
+        }
+
+        for (int i = 1; i < noteName.length() && noteName.charAt(i) != '/'; i++) {
+            switch (noteName.charAt(i)) {
+            case '#':
+                pitchClass++;
+                break;
+            case 'b':
+                pitchClass--;
+                break;
+            default:
+                return -1;
+            }
+        }
+
+        return PhasesPApplet.remainder(pitchClass, 12);
+    }
+
     @Override
     public String toString() {
         return "Scale [name=" + name + ", noteNames=" + Arrays.toString(noteNames) + ", noteValues="
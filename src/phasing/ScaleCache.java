@@ -0,0 +1,142 @@
+package phasing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary cache of the scale sets loaded from the JSON files in the scales
+ * folder, so they don't have to be parsed again every time the program
+ * starts.
+ * 
+ * The cache starts with a header (a magic number and a version number),
+ * followed by a stamp of every JSON file it was made from (its path, its last
+ * modified time, and its length), followed by the scale sets. If the stamps
+ * don't match the JSON files as they are now, the cache is stale and is
+ * ignored.
+ * 
+ * @author James Morrow
+ *
+ */
+public class ScaleCache {
+    private static final int MAGIC = 0x50485343; // "PHSC"
+    private static final int VERSION = 1;
+
+    /**
+     * Reads the scale sets from the given cache file, as long as the cache was
+     * made from the given JSON files as they are now.
+     * 
+     * @param cacheFile
+     *            The cache file.
+     * @param sources
+     *            The JSON files, in the order the scale sets should be in.
+     * @return The scale sets, or null if there is no cache or the cache is
+     *         stale.
+     */
+    public static List<ScaleSet> read(File cacheFile, List<File> sources) {
+        if (!cacheFile.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(cacheFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            // stamps
+            int numSources = in.readInt();
+            if (numSources != sources.size()) {
+                return null;
+            }
+            for (File source : sources) {
+                if (!in.readUTF().equals(source.getAbsolutePath()) || in.readLong() != source.lastModified()
+                        || in.readLong() != source.length()) {
+                    return null;
+                }
+            }
+
+            // scale sets
+            int numScaleSets = in.readInt();
+            List<ScaleSet> scaleSets = new ArrayList<ScaleSet>(numScaleSets);
+            for (int i = 0; i < numScaleSets; i++) {
+                String name = in.readUTF();
+                Scale[] scales = new Scale[in.readInt()];
+                for (int j = 0; j < scales.length; j++) {
+                    String scaleName = in.readUTF();
+                    String[] noteNames = new String[in.readInt()];
+                    for (int k = 0; k < noteNames.length; k++) {
+                        noteNames[k] = in.readUTF();
+                    }
+                    int[] noteValues = new int[in.readInt()];
+                    for (int k = 0; k < noteValues.length; k++) {
+                        noteValues[k] = in.readInt();
+                    }
+                    scales[j] = new Scale(scaleName, name, noteNames, noteValues);
+                }
+                scaleSets.add(new ScaleSet(name, scales));
+            }
+            return scaleSets;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable scale cache " + cacheFile + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Encodes the given scale sets as the contents of a cache file.
+     * 
+     * @param sources
+     *            The JSON files the scale sets were loaded from.
+     * @param scaleSets
+     *            The scale sets.
+     * @return The contents of the cache file.
+     */
+    public static byte[] toBytes(List<File> sources, List<ScaleSet> scaleSets) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            // header
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            // stamps
+            out.writeInt(sources.size());
+            for (File source : sources) {
+                out.writeUTF(source.getAbsolutePath());
+                out.writeLong(source.lastModified());
+                out.writeLong(source.length());
+            }
+
+            // scale sets
+            out.writeInt(scaleSets.size());
+            for (ScaleSet ss : scaleSets) {
+                out.writeUTF(ss.getName());
+                out.writeInt(ss.numScales());
+                for (int i = 0; i < ss.numScales(); i++) {
+                    Scale scale = ss.getScale(i);
+                    out.writeUTF(scale.getName());
+                    String[] noteNames = scale.getNoteNames();
+                    out.writeInt(noteNames.length);
+                    for (String noteName : noteNames) {
+                        out.writeUTF(noteName);
+                    }
+                    int[] noteValues = scale.getNoteValues();
+                    out.writeInt(noteValues.length);
+                    for (int noteValue : noteValues) {
+                        out.writeInt(noteValue);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream doesn't throw IOExceptions
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -15,6 +15,8 @@ import processing.data.JSONObject;
 public class ScaleSet {
     private String name;
     private Scale[] scales;
+    // the first scale with each root pitch class, or null
+    private Scale[] scalesByRootPitchClass = new Scale[12];
 
     /**
      * Loads a scale set from a JSONObject.
@@ -29,6 +31,33 @@ public class ScaleSet {
         for (int i = 0; i < jscales.size(); i++) {
             scales[i] = new Scale(jscales.getJSONObject(i), name);
         }
+        initScalesByRootPitchClass();
+    }
+
+    /**
+     * Constructs a scale set from its name and its scales.
+     * 
+     * @param name
+     *            The name of the scale class.
+     * @param scales
+     *            The scales.
+     */
+    public ScaleSet(String name, Scale[] scales) {
+        this.name = name;
+        this.scales = scales;
+        initScalesByRootPitchClass();
+    }
+
+    /**
+     * Indexes the scales by the pitch classes of their roots.
+     */
+    private void initScalesByRootPitchClass() {
+        for (int i = 0; i < scales.length; i++) {
+            int rootPitchClass = scales[i].getRootPitchClass();
+            if (scalesByRootPitchClass[rootPitchClass] == null) {
+                scalesByRootPitchClass[rootPitchClass] = scales[i];
+            }
+        }
     }
 
     /**
@@ -59,6 +88,20 @@ public class ScaleSet {
         return null;
     }
 
+    /**
+     * 
+     * @param rootPitchClass
+     *            The pitch class of the root (0 for C, 1 for C#, ..., 11 for
+     *            B).
+     * @return The scale with the given root, or null if there is none.
+     */
+    public Scale getScaleByRootPitchClass(int rootPitchClass) {
+        if (0 <= rootPitchClass && rootPitchClass < 12) {
+            return scalesByRootPitchClass[rootPitchClass];
+        }
+        return null;
+    }
+
     /**
      * 
      * @param i
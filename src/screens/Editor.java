@@ -753,7 +753,7 @@ public class Editor extends Screen implements PhraseReaderListener {
         if (e.getValue() == 0) {
             livePlayer.stop();
         } else {
-            livePlayer.tempo(pa.getBPM1());
+            livePlayer.play(pa.getBPM1());
             activeNoteIndex = NOT_APPLICABLE;
         }
     }
@@ -783,7 +783,7 @@ public class Editor extends Screen implements PhraseReaderListener {
     public void onEnter() {
         cp5.show();
         showUnlockedControllers();
-        prev_t = pa.millis();
+        prev_t = pa.getClock().millis();
         playToggle.setValue(false);
 
         if (pa.width < 800 || pa.height < 600) {
@@ -1065,19 +1065,17 @@ public class Editor extends Screen implements PhraseReaderListener {
 
     @Override
     public void drawWhilePaused() {
-        prev_t = pa.millis();
+        prev_t = pa.getClock().millis();
     }
 
     @Override
     public void draw() {
         pa.background(255);
 
-        int dt = pa.millis() - prev_t;
+        int dt = pa.getClock().millis() - prev_t;
         pa.playerInfo.minutesSpentWithEditor += PhasesPApplet.millisToMinutes(dt);
-        if (playToggle.getValue() != 0) {
-            livePlayer.update(dt * pa.getBPMS1());
-        }
-        prev_t = pa.millis();
+        livePlayer.dispatchNoteEvents();
+        prev_t = pa.getClock().millis();
 
         checkUnlocks();
 
@@ -26,6 +26,9 @@ public class PhraseRepository extends Screen implements CellEventHandler {
     // current page number
     private int currPageNum;
 
+    // number of pages on either side of the current page to load in advance
+    private final int numPrefetchPages = 1;
+
     // controlp5
     private ControlP5 cp5;
     private Button pageLeftButton, pageRightButton;
@@ -139,6 +142,7 @@ public class PhraseRepository extends Screen implements CellEventHandler {
     public void pageLeft(ControlEvent e) {
         currPageNum--;
         updateDirectionalButtonStates();
+        prefetchPages();
     }
 
     /**
@@ -149,6 +153,7 @@ public class PhraseRepository extends Screen implements CellEventHandler {
     public void pageRight(ControlEvent e) {
         currPageNum++;
         updateDirectionalButtonStates();
+        prefetchPages();
     }
 
     /****************************
@@ -229,6 +234,21 @@ public class PhraseRepository extends Screen implements CellEventHandler {
         updateDirectionalButtonStates();
     }
 
+    /**
+     * Starts loading the PhrasePictures on the current page, and then those on
+     * the pages around it, in the background. Only that many PhrasePictures
+     * (plus a page to spare) are kept in memory.
+     */
+    private void prefetchPages() {
+        int pageSize = cells.size();
+        pa.setNumPhrasePicturesInMemory((2 * numPrefetchPages + 2) * pageSize);
+        pa.prefetchPhrasePictures(currPageNum * pageSize, (currPageNum + 1) * pageSize);
+        for (int i = 1; i <= numPrefetchPages; i++) {
+            pa.prefetchPhrasePictures((currPageNum + i) * pageSize, (currPageNum + i + 1) * pageSize);
+            pa.prefetchPhrasePictures((currPageNum - i) * pageSize, (currPageNum - i + 1) * pageSize);
+        }
+    }
+
     /*********************************
      ***** Screen Event Handling *****
      *********************************/
@@ -241,6 +261,7 @@ public class PhraseRepository extends Screen implements CellEventHandler {
             currPageNum--;
         }
         initDirectionalButtons();
+        prefetchPages();
     }
 
     @Override
@@ -250,6 +271,7 @@ public class PhraseRepository extends Screen implements CellEventHandler {
         cp5.show();
         currPageNum = pa.indexOfCurrentPhrasePicture() != -1 ? pa.indexOfCurrentPhrasePicture() / cells.size() : 0;
         initDirectionalButtons();
+        prefetchPages();
     }
 
     @Override
@@ -22,13 +22,16 @@ import icons.SineWaveIcon;
 import icons.SuperimposedOrSeparatedIcon;
 import icons.TransformIcon;
 import icons.ViewTypeIcon;
+import phasing.PhasePosition;
 import phasing.PhasesPApplet;
+import phasing.Phrase;
 import phasing.PhraseReader;
 import phasing.PhraseReader.PhraseReaderListener;
 import phasing.PlayerInfo;
 import processing.core.PApplet;
 import soundcipher.SCScorePlus;
 import util.ModInt;
+import util.SaveService;
 import views.LiveScorer;
 import views.Musician;
 import views.PhaseShifter;
@@ -59,12 +62,14 @@ public class Presenter extends Screen implements ViewVariableInfo, PhraseReaderL
 
     // musical time
     private final boolean SHOW_ANIMATION_ERROR;
-    private float prev_notept1, prev_notept2;
-    private float syncDebt1 = 0, syncDebt2 = 0;
-    private float totalNotept1, totalNotept2;
-    private float target_dNotept1, target_dNotept2;
-    private int dataPts = 0;
-    private float acceptableAccountSize = 0.05f;
+    private final PhasePosition phasePosition = new PhasePosition();
+    private double prevTotalNotept1, prevTotalNotept2;
+    private double drift1, drift2;
+    private final double driftTolerance = 0.05; // beats
+    // where playback left off, so it can carry on from there (null if it
+    // should start from the beginning)
+    private Phrase resumePhrase;
+    private float resumeNotept1, resumeNotept2, resumeTotalDuration;
 
     // views
     private Musician musicianView;
@@ -452,16 +457,16 @@ public class Presenter extends Screen implements ViewVariableInfo, PhraseReaderL
     }
 
     /**
-     * Sets up music playback.
+     * Sets up music playback. If the players were already playing, or were
+     * playing when the Presenter was last exited, they carry on from where
+     * they were.
      */
     private void setupPlayback() {
-        prev_notept1 = 0;
-        prev_notept2 = 0;
-        totalNotept1 = 0;
-        totalNotept2 = 0;
-        syncDebt1 = 0;
-        syncDebt2 = 0;
-        dataPts = 0;
+        saveResumePosition();
+        prevTotalNotept1 = 0;
+        prevTotalNotept2 = 0;
+        drift1 = 0;
+        drift2 = 0;
 
         pa.currentPhrase.addToScore(player1, 0, 0, instrument);
         // if (liveScorerView.orientationMode.toInt() == NON_REVERSED) {
@@ -480,12 +485,72 @@ public class Presenter extends Screen implements ViewVariableInfo, PhraseReaderL
         player2.repeat(-1);
         player1.play();
         player2.play();
+        phasePosition.start(pa.getClock().nanoTime(), pa.getBPM1(), pa.getBPM2(),
+                pa.currentPhrase.getTotalDuration());
 
         playing = true;
+
+        if (resumePhrase == pa.currentPhrase && resumeTotalDuration == pa.currentPhrase.getTotalDuration()) {
+            seek(resumeNotept1, resumeNotept2);
+        }
+        resumePhrase = null;
+    }
+
+    /**
+     * Remembers where both players are, if they are playing, so that the next
+     * call to setupPlayback() carries on from there at the same phase
+     * difference instead of starting over. Playback starts over anyway if, by
+     * then, a different phrase or a phrase of a different length is current.
+     */
+    private void saveResumePosition() {
+        if (playing) {
+            long nanos = pa.getClock().nanoTime();
+            resumePhrase = pa.currentPhrase;
+            resumeNotept1 = (float) phasePosition.getNotept1(nanos);
+            resumeNotept2 = (float) phasePosition.getNotept2(nanos);
+            resumeTotalDuration = pa.currentPhrase.getTotalDuration();
+        }
+    }
+
+    /**
+     * Moves both players to the given positions in the phrase at once, so
+     * that playback carries on from there at whatever phase difference the
+     * positions make. The sequencers, the phase position model, the phrase
+     * readers, and the views all jump there together.
+     * 
+     * @param notept1
+     *            The position of player 1, in terms of musical time.
+     * @param notept2
+     *            The position of player 2, in terms of musical time.
+     */
+    public void seek(float notept1, float notept2) {
+        long nanos = pa.getClock().nanoTime();
+        phasePosition.resync1(nanos, notept1);
+        phasePosition.resync2(nanos, notept2);
+        prevTotalNotept1 = phasePosition.getTotalNotept1(nanos);
+        prevTotalNotept2 = phasePosition.getTotalNotept2(nanos);
+        drift1 = 0;
+        drift2 = 0;
+
+        notept1 = (float) phasePosition.getNotept1(nanos);
+        notept2 = (float) phasePosition.getNotept2(nanos);
+        float totalDuration = pa.currentPhrase.getTotalDuration();
+        if (totalDuration > 0) {
+            player1.setTickPosition((long) (player1.getTickLength() * (notept1 / totalDuration)));
+            player2.setTickPosition((long) (player2.getTickLength() * (notept2 / totalDuration)));
+        }
+
+        reader1.wakeUp(notept1);
+        reader2.wakeUp(notept2);
+        musicianView.wakeUp(notept1, notept2);
+        phaseShifterView.wakeUp(notept1, notept2);
+        liveScorerView.wakeUp(notept1, notept2);
     }
 
     @Override
     public void onExit() {
+        saveResumePosition();
+        playing = false;
         player1.stop();
         player2.stop();
         if (cp5 != null) {
@@ -508,7 +573,7 @@ public class Presenter extends Screen implements ViewVariableInfo, PhraseReaderL
 
     @Override
     public void drawWhilePaused() {
-        int t = pa.millis();
+        int t = pa.getClock().millis();
         dt = t - prev_t;
         prev_t = t;
     }
@@ -529,7 +594,7 @@ public class Presenter extends Screen implements ViewVariableInfo, PhraseReaderL
      * been executing under certain conditions.
      */
     private void updateTime() {
-        int t = pa.millis();
+        int t = pa.getClock().millis();
         dt = t - prev_t;
         prev_t = t;
         float changeInMinutes = PhasesPApplet.millisToMinutes(dt);
@@ -637,56 +702,82 @@ public class Presenter extends Screen implements ViewVariableInfo, PhraseReaderL
      * duration a player has traveled since last frame. Then it sends that
      * information to the active view and tells the view to update and draw
      * itself.
+     * 
+     * The players' positions come from the phase position model, which is
+     * exact for any timestamp, so they don't need smoothing. The model is
+     * checked against the sequencers every frame, and if it has drifted from
+     * a sequencer by more than a small tolerance (as happens while a
+     * sequencer is starting up) it is re-anchored to that sequencer. That
+     * check is skipped when the PhasesPApplet's clock doesn't keep real time,
+     * since then the model is the only thing that knows where the players
+     * are.
      */
     private void animateView() {
-        float notept1 = computeNotept1();
-        float notept2 = computeNotept2();
-
-        float dNotept1 = notept1 - prev_notept1;
-        float dNotept2 = notept2 - prev_notept2;
-
-        if (dNotept1 < 0) {
-            dNotept1 += pa.currentPhrase.getTotalDuration();
-        }
-
-        if (dNotept2 < 0) {
-            dNotept2 += pa.currentPhrase.getTotalDuration();
+        long nanos = pa.getClock().nanoTime();
+
+        // drift monitor (the sequencers keep real time, so they can only be
+        // compared against a clock that does too):
+        if (pa.getClock().isRealTime()) {
+            drift1 = phasePosition.getDrift1(nanos, computeNotept1());
+            drift2 = phasePosition.getDrift2(nanos, computeNotept2());
+            if (Math.abs(drift1) > driftTolerance) {
+                phasePosition.resync1(nanos, phasePosition.getTotalNotept1(nanos) - drift1);
+                reader1.wakeUp((float) phasePosition.getNotept1(nanos));
+            }
+            if (Math.abs(drift2) > driftTolerance) {
+                phasePosition.resync2(nanos, phasePosition.getTotalNotept2(nanos) - drift2);
+                reader2.wakeUp((float) phasePosition.getNotept2(nanos));
+            }
         }
 
-        // smoothing:
-        dataPts++;
-        totalNotept1 += dNotept1;
-        totalNotept2 += dNotept2;
-        float avg_dNotept1 = totalNotept1 / dataPts;
-        float avg_dNotept2 = totalNotept2 / dataPts;
-
-        float actual_dNotept1 = avg_dNotept1 + 0.05f * syncDebt1;
-        float actual_dNotept2 = avg_dNotept2 + 0.05f * syncDebt2;
+        double totalNotept1 = phasePosition.getTotalNotept1(nanos);
+        double totalNotept2 = phasePosition.getTotalNotept2(nanos);
 
-        syncDebt1 += (dNotept1 - actual_dNotept1);
-        syncDebt2 += (dNotept2 - actual_dNotept2);
+        // a re-anchored player may have moved backward, which the views
+        // can't show, so they hold still instead
+        float dNotept1 = (float) Math.max(0, totalNotept1 - prevTotalNotept1);
+        float dNotept2 = (float) Math.max(0, totalNotept2 - prevTotalNotept2);
 
         if (SHOW_ANIMATION_ERROR) {
-            String s = "sync debt 1: " + String.format("%.3f", syncDebt1);
-            String t = "sync debt 2: " + String.format("%.3f", syncDebt2);
+            String s = "drift 1: " + String.format("%.3f", drift1);
+            String t = "drift 2: " + String.format("%.3f", drift2);
             pa.fill(0);
             pa.textFont(pa.pfont12);
             pa.text(s, pa.width - 150, 20);
             pa.text(t, pa.width - 150, 40);
+
+            SaveService saveService = pa.getSaveService();
+            String u = "save queue: " + saveService.getQueueDepth();
+            String v = "save ms: " + String.format("%.1f", saveService.getAverageWriteMillis()) + " avg, "
+                    + String.format("%.1f", saveService.getMaxWriteMillis()) + " max";
+            pa.text(u, pa.width - 150, 60);
+            pa.text(v, pa.width - 150, 80);
+
+            String w = "first frame ms: "
+                    + String.format("%.1f", pa.getStartupProfiler().getTimeToFirstFrameMillis());
+            pa.text(w, pa.width - 150, 100);
         }
 
-        prev_notept1 = notept1;
-        prev_notept2 = notept2;
+        prevTotalNotept1 = totalNotept1;
+        prevTotalNotept2 = totalNotept2;
 
-        reader1.update(actual_dNotept1);
-        reader2.update(actual_dNotept2);
-        view.update(dt, actual_dNotept1, actual_dNotept2);
+        reader1.update(dNotept1);
+        reader2.update(dNotept2);
+        view.update(dt, dNotept1, dNotept2);
 
         if (view != phaseShifterView) {
-            phaseShifterView.updateNormalTransforms(actual_dNotept1, actual_dNotept2);
+            phaseShifterView.updateNormalTransforms(dNotept1, dNotept2);
         }
     }
 
+    /**
+     * 
+     * @return The model of where each player is in the phrase.
+     */
+    public PhasePosition getPhasePosition() {
+        return phasePosition;
+    }
+
     /********************************
      ***** Input Event Handling *****
      ********************************/
@@ -4,8 +4,8 @@ import arb.soundcipher.SCScore;
 
 /**
  * Extends the functionality of an SCScore (a container of musical score data)
- * with methods that expose the position of the playhead while the score is
- * being played.
+ * with methods that expose and move the position of the playhead while the
+ * score is being played.
  * 
  * @author James Morrow
  *
@@ -18,4 +18,15 @@ public class SCScorePlus extends SCScore {
     public long getTickLength() {
         return sequencer.getTickLength();
     }
+
+    /**
+     * Moves the playhead to the given tick, whether or not the score is
+     * being played.
+     * 
+     * @param tick
+     *            The tick.
+     */
+    public void setTickPosition(long tick) {
+        sequencer.setTickPosition(tick);
+    }
 }
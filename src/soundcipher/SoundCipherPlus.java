@@ -1,27 +1,27 @@
 package soundcipher;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
 import arb.soundcipher.SoundCipher;
 import phasing.Phrase;
-import phasing.PhraseReader;
 import phasing.PhraseReader.PhraseReaderListener;
+import phasing.PhraseScheduler;
+import phasing.PhraseScheduler.PhraseSchedulerListener;
+import phasing.PhraseSnapshot;
 import processing.core.PApplet;
 
 /**
  * Extends the functionality of a SoundCipher (a player of musical data) with
  * functionality that allow it to read and play a Phrase object.
  * 
- * Also has a callback that it triggers playNote() is called (every time it
- * plays a note), passing itself as an argument.
+ * The notes are played by a PhraseScheduler, on a thread of its own, so their
+ * timing doesn't depend on the frame rate. Every time it plays a note, it also
+ * queues up a note event for the given listener, which receives them when
+ * dispatchNoteEvents() is called.
  * 
  * @author James Morrow
  *
  */
-public class SoundCipherPlus extends SoundCipher implements PhraseReaderListener {
-    private PhraseReader phraseReader;
-    private Phrase phrase;
+public class SoundCipherPlus extends SoundCipher implements PhraseSchedulerListener {
+    private PhraseScheduler scheduler;
     private PhraseReaderListener listener;
 
     /**
@@ -30,35 +30,54 @@ public class SoundCipherPlus extends SoundCipher implements PhraseReaderListener
      *            The PApplet that its parent binds to a variable
      * @param phrase
      *            The phrase to read and play
-     * @param callee
-     *            The object on which to invoke the callback
-     * @param callback
-     *            The method to call when playNote is called
+     * @param listener
+     *            The object to send note events to
      */
     public SoundCipherPlus(PApplet pa, Phrase phrase, PhraseReaderListener listener) {
         super(pa);
-        this.phrase = phrase;
-        phraseReader = new PhraseReader(phrase, 0, this);
         this.listener = listener;
+        scheduler = new PhraseScheduler(phrase, 0, this, listener);
     }
 
     /**
-     * Plays the phrase at the rate determined by the dNotept variable.
+     * Starts playing the phrase (or resumes playing it, if it was stopped) at
+     * the given tempo.
      * 
-     * @param currentPhrase
-     * @param dNotept
+     * @param bpm
+     *            The tempo, in beats per minute.
+     */
+    public void play(float bpm) {
+        tempo(bpm);
+        scheduler.start();
+    }
+
+    @Override
+    public void tempo(double bpm) {
+        super.tempo(bpm);
+        if (scheduler != null) {
+            scheduler.setBPM((float) bpm);
+        }
+    }
+
+    @Override
+    public void stop() {
+        scheduler.stop();
+        super.stop();
+    }
+
+    /**
+     * Sends the note events for the notes played since the last call to the
+     * listener. Should be called from the animation thread.
      */
-    public void update(float dNotept) {
-        phraseReader.update(dNotept);
+    public void dispatchNoteEvents() {
+        scheduler.dispatchNoteEvents();
     }
 
     @Override
-    public void noteEvent(PhraseReader phraseReader) {
-        int i = phraseReader.getNoteIndex();
-        if (!phrase.isRest(i)) {
-            super.playNote(phrase.getSCPitch(i), phrase.getSCDynamic(i), 0.9f * phrase.getSCDuration(i));
+    public void noteOnset(PhraseScheduler scheduler, int i, PhraseSnapshot snapshot) {
+        if (!snapshot.isRest(i)) {
+            super.playNote(snapshot.getPitch(i), snapshot.getDynamic(i), 0.9f * snapshot.getDuration(i));
         }
-        listener.noteEvent(phraseReader);
     }
 
     /**
@@ -66,11 +85,18 @@ public class SoundCipherPlus extends SoundCipher implements PhraseReaderListener
      * @return The index of the note currently being played
      */
     public int getNoteIndex() {
-        return phraseReader.getNoteIndex();
+        return scheduler.getNoteIndex();
     }
 
+    /**
+     * Stops playing the current phrase and switches to the given phrase.
+     * 
+     * @param phrase
+     *            The phrase to play.
+     */
     public void setPhrase(Phrase phrase) {
-        this.phrase = phrase;
-        phraseReader = new PhraseReader(phrase, 0, this);
+        scheduler.stop();
+        scheduler = new PhraseScheduler(phrase, 0, this, listener);
+        scheduler.setBPM((float) tempo);
     }
 }
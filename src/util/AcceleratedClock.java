@@ -0,0 +1,53 @@
+package util;
+
+/**
+ * A Clock that runs some number of times faster (or slower) than real time.
+ * 
+ * @author James Morrow
+ *
+ */
+public class AcceleratedClock implements Clock {
+    private final long startNanos = System.nanoTime();
+    private final double rate;
+
+    /**
+     * 
+     * @param rate
+     *            How many seconds pass on the clock for every second of real
+     *            time.
+     */
+    public AcceleratedClock(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("The rate of an AcceleratedClock must be positive.");
+        }
+        this.rate = rate;
+    }
+
+    @Override
+    public long nanoTime() {
+        return startNanos + (long) ((System.nanoTime() - startNanos) * rate);
+    }
+
+    @Override
+    public int millis() {
+        return (int) ((nanoTime() - startNanos) / 1000000L);
+    }
+
+    @Override
+    public void tick() {
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return rate == 1;
+    }
+
+    /**
+     * 
+     * @return How many seconds pass on the clock for every second of real
+     *         time.
+     */
+    public double getRate() {
+        return rate;
+    }
+}
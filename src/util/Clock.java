@@ -0,0 +1,41 @@
+package util;
+
+/**
+ * A source of time for playback and animation.
+ * 
+ * Everything that keeps time from frame to frame asks a Clock for the time,
+ * instead of asking the system, so that the program can be run on virtual
+ * time: faster than real time, or in fixed steps that don't depend on how
+ * long frames actually take. That way hours of playback can be simulated in
+ * seconds, and benchmarks can be made deterministic.
+ * 
+ * @author James Morrow
+ *
+ */
+public interface Clock {
+    /**
+     * 
+     * @return The current time, in nanoseconds. Only the differences between
+     *         the values this returns are meaningful.
+     */
+    public long nanoTime();
+
+    /**
+     * 
+     * @return The number of milliseconds since the clock started.
+     */
+    public int millis();
+
+    /**
+     * Informs the clock that a new frame has begun. Invoked once at the start
+     * of every frame.
+     */
+    public void tick();
+
+    /**
+     * 
+     * @return True if the clock keeps real time, in which case things that
+     *         keep time on their own, like the sequencers, agree with it.
+     */
+    public boolean isRealTime();
+}
@@ -0,0 +1,53 @@
+package util;
+
+/**
+ * A Clock that advances by the same amount of time every frame, no matter how
+ * long frames actually take. Time stands still between frames.
+ * 
+ * @author James Morrow
+ *
+ */
+public class FixedStepClock implements Clock {
+    private final long stepNanos;
+    private long nanos;
+
+    /**
+     * 
+     * @param stepMillis
+     *            How much time passes every frame, in milliseconds.
+     */
+    public FixedStepClock(double stepMillis) {
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("The step of a FixedStepClock must be positive.");
+        }
+        this.stepNanos = Math.round(stepMillis * 1000000.0);
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public int millis() {
+        return (int) (nanos / 1000000L);
+    }
+
+    @Override
+    public void tick() {
+        nanos += stepNanos;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    /**
+     * 
+     * @return How much time passes every frame, in nanoseconds.
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+}
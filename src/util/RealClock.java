@@ -0,0 +1,30 @@
+package util;
+
+/**
+ * A Clock that keeps real time.
+ * 
+ * @author James Morrow
+ *
+ */
+public class RealClock implements Clock {
+    private final long startNanos = System.nanoTime();
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public int millis() {
+        return (int) ((System.nanoTime() - startNanos) / 1000000L);
+    }
+
+    @Override
+    public void tick() {
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+}
@@ -0,0 +1,261 @@
+package util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import processing.data.JSONObject;
+
+/**
+ * Saves files in the background, so that saving doesn't hold up the animation
+ * thread.
+ * 
+ * The contents of a file are captured when a save is requested, but the file
+ * is only written after a short delay, on a background thread. If the same
+ * file is saved again during that delay, the saves are coalesced and only the
+ * most recent contents are written. Every file is written to a temporary file
+ * first, which then replaces the actual file, so a file is never left
+ * half-written, even if the program is stopped in the middle of writing it.
+ * 
+ * Pending saves are lost if the program exits without invoking flush().
+ * 
+ * @author James Morrow
+ *
+ */
+public class SaveService {
+    // how long to wait for more saves to the same file before writing it
+    private final long delayMillis;
+
+    // contents waiting to be written, by file (guarded by this)
+    private final Map<File, byte[]> pending = new LinkedHashMap<File, byte[]>();
+
+    // metrics (guarded by this)
+    private int numWrites, numCoalesced, numFailures;
+    private long totalWriteNanos, maxWriteNanos;
+
+    // background thread
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "SaveService");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 
+     * @param delayMillis
+     *            How long to wait, in milliseconds, for more saves to the same
+     *            file before writing it.
+     */
+    public SaveService(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /******************
+     ***** Saving *****
+     ******************/
+
+    /**
+     * Saves the given JSONObject to the given file, in the background.
+     * 
+     * @param json
+     *            The JSONObject.
+     * @param file
+     *            The file.
+     */
+    public void save(JSONObject json, File file) {
+        save(json.format(2).getBytes(StandardCharsets.UTF_8), file);
+    }
+
+    /**
+     * Saves the given bytes to the given file, in the background.
+     * 
+     * @param contents
+     *            The bytes. They must not be modified afterward.
+     * @param file
+     *            The file.
+     */
+    public synchronized void save(byte[] contents, File file) {
+        if (pending.put(file, contents) != null) {
+            numCoalesced++;
+        } else {
+            executor.schedule(() -> write(file), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes every pending save right away, waiting until they are written.
+     */
+    public void flush() {
+        try {
+            executor.submit(() -> {
+                File[] files;
+                synchronized (this) {
+                    files = pending.keySet().toArray(new File[pending.size()]);
+                }
+                for (File file : files) {
+                    write(file);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the pending contents of the given file, if there are any. Runs on
+     * the background thread.
+     * 
+     * @param file
+     *            The file.
+     */
+    private void write(File file) {
+        byte[] contents;
+        synchronized (this) {
+            contents = pending.remove(file);
+        }
+        if (contents == null) {
+            // already written by a flush
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        boolean success = true;
+        try {
+            writeAtomically(contents, file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            success = false;
+        }
+        long writeNanos = System.nanoTime() - startNanos;
+
+        synchronized (this) {
+            if (success) {
+                numWrites++;
+                totalWriteNanos += writeNanos;
+                maxWriteNanos = Math.max(maxWriteNanos, writeNanos);
+            } else {
+                numFailures++;
+            }
+        }
+    }
+
+    /**
+     * Writes the given bytes to a temporary file in the same folder as the
+     * given file, forces them out to the storage device, and then replaces the
+     * given file with the temporary file.
+     * 
+     * @param contents
+     *            The bytes.
+     * @param file
+     *            The file.
+     * @throws IOException
+     *             If the file can't be written.
+     */
+    public static void writeAtomically(byte[] contents, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(contents);
+                out.getFD().sync();
+            }
+            replace(file, temp);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the given file with the given temporary file, atomically if the
+     * file system allows it.
+     * 
+     * @param file
+     *            The file.
+     * @param temp
+     *            The temporary file, which should be in the same folder.
+     * @throws IOException
+     *             If the file can't be replaced.
+     */
+    public static void replace(File file, File temp) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*******************
+     ***** Metrics *****
+     *******************/
+
+    /**
+     * 
+     * @return The number of files waiting to be written.
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * 
+     * @return The number of files written successfully.
+     */
+    public synchronized int getNumWrites() {
+        return numWrites;
+    }
+
+    /**
+     * 
+     * @return The number of saves that were coalesced with a later save to
+     *         the same file, and so were never written.
+     */
+    public synchronized int getNumCoalesced() {
+        return numCoalesced;
+    }
+
+    /**
+     * 
+     * @return The number of files that failed to be written.
+     */
+    public synchronized int getNumFailures() {
+        return numFailures;
+    }
+
+    /**
+     * 
+     * @return The average time it took to write a file, in milliseconds.
+     */
+    public synchronized float getAverageWriteMillis() {
+        return (numWrites == 0) ? 0 : totalWriteNanos / (numWrites * 1e6f);
+    }
+
+    /**
+     * 
+     * @return The longest time it took to write a file, in milliseconds.
+     */
+    public synchronized float getMaxWriteMillis() {
+        return maxWriteNanos / 1e6f;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{queue depth: " + pending.size() + ", writes: " + numWrites + ", coalesced: " + numCoalesced
+                + ", failures: " + numFailures + ", avg write ms: " + String.format("%.2f", getAverageWriteMillis())
+                + ", max write ms: " + String.format("%.2f", getMaxWriteMillis()) + "}";
+    }
+}
@@ -0,0 +1,81 @@
+package util;
+
+import processing.core.PApplet;
+
+/**
+ * A precomputed table of one period of the sine function, for drawing waves
+ * without computing the sine of every vertex of every frame.
+ * 
+ * The table samples the period at a fixed number of evenly spaced angles, and
+ * values between samples are linearly interpolated, so the error shrinks with
+ * the square of the resolution. At the default resolution it is far smaller
+ * than a pixel for any wave that fits on screen.
+ * 
+ * @author James Morrow
+ *
+ */
+public class SineTable {
+    /**
+     * A table shared by everything that draws sine waves.
+     */
+    public static final SineTable DEFAULT = new SineTable(1024);
+
+    // the samples, with the first sample repeated at the end so that
+    // interpolating never has to wrap around
+    private final float[] samples;
+    private final int resolution;
+    private final float samplesPerRadian;
+
+    /**
+     * 
+     * @param resolution
+     *            The number of samples per period.
+     */
+    public SineTable(int resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("The resolution of a SineTable must be positive.");
+        }
+        this.resolution = resolution;
+        this.samplesPerRadian = resolution / PApplet.TWO_PI;
+        samples = new float[resolution + 1];
+        for (int i = 0; i < resolution; i++) {
+            samples[i] = (float) Math.sin(2 * Math.PI * i / resolution);
+        }
+        samples[resolution] = samples[0];
+    }
+
+    /**
+     * 
+     * @param theta
+     *            An angle, in radians.
+     * @return The sine of the angle.
+     */
+    public float sin(float theta) {
+        float x = theta * samplesPerRadian;
+        int i = (int) Math.floor(x);
+        float f = x - i;
+        i %= resolution;
+        if (i < 0) {
+            i += resolution;
+        }
+        return samples[i] + (samples[i + 1] - samples[i]) * f;
+    }
+
+    /**
+     * 
+     * @param theta
+     *            An angle, in radians.
+     * @return The cosine of the angle.
+     */
+    public float cos(float theta) {
+        return sin(theta + PApplet.HALF_PI);
+    }
+
+    /**
+     * 
+     * @return The number of samples per period.
+     */
+    public int getResolution() {
+        return resolution;
+    }
+}
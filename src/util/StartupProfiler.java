@@ -0,0 +1,96 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures how long each phase of startup takes, and how long it takes to get
+ * from launching the program to drawing the first frame.
+ * 
+ * @author James Morrow
+ *
+ */
+public class StartupProfiler {
+    // when the profiler was created, which is taken to be the launch
+    private final long startNanos = System.nanoTime();
+
+    // how long each phase took, in the order they ran (guarded by this)
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+    private long firstFrameNanos = -1;
+
+    /**
+     * Runs the given phase of startup, recording how long it takes.
+     * 
+     * @param phase
+     *            The name of the phase.
+     * @param runnable
+     *            The phase.
+     */
+    public void time(String phase, Runnable runnable) {
+        long phaseStartNanos = System.nanoTime();
+        runnable.run();
+        record(phase, System.nanoTime() - phaseStartNanos);
+    }
+
+    /**
+     * Records how long a phase of startup took. If the phase was already
+     * recorded, the durations are added together.
+     * 
+     * @param phase
+     *            The name of the phase.
+     * @param nanos
+     *            How long the phase took, in nanoseconds.
+     */
+    public synchronized void record(String phase, long nanos) {
+        Long prevNanos = phaseNanos.get(phase);
+        phaseNanos.put(phase, (prevNanos != null) ? prevNanos + nanos : nanos);
+    }
+
+    /**
+     * Records that the first frame has been drawn, and prints a summary of
+     * startup. Does nothing after the first time it is invoked.
+     */
+    public void firstFrameDrawn() {
+        synchronized (this) {
+            if (firstFrameNanos != -1) {
+                return;
+            }
+            firstFrameNanos = System.nanoTime() - startNanos;
+        }
+        System.out.println("Startup: " + this);
+    }
+
+    /**
+     * 
+     * @return How long each phase of startup took, in milliseconds, in the
+     *         order they ran.
+     */
+    public synchronized Map<String, Float> getPhaseMillis() {
+        Map<String, Float> phaseMillis = new LinkedHashMap<String, Float>();
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            phaseMillis.put(entry.getKey(), entry.getValue() / 1e6f);
+        }
+        return phaseMillis;
+    }
+
+    /**
+     * 
+     * @return How long it took to get from launching the program to drawing
+     *         the first frame, in milliseconds, or -1 if the first frame
+     *         hasn't been drawn yet.
+     */
+    public synchronized float getTimeToFirstFrameMillis() {
+        return (firstFrameNanos == -1) ? -1 : firstFrameNanos / 1e6f;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder s = new StringBuilder("{");
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            s.append(entry.getKey()).append(" ms: ").append(String.format("%.1f", entry.getValue() / 1e6f))
+                    .append(", ");
+        }
+        s.append("time to first frame ms: ").append(String.format("%.1f", getTimeToFirstFrameMillis()));
+        return s.append("}").toString();
+    }
+}
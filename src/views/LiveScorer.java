@@ -1,14 +1,14 @@
 package views;
 
-import java.util.ArrayList;
-
 import geom.Rect;
 import phasing.PhasesPApplet;
 import phasing.PhraseReader;
+import phasing.PhraseSnapshot;
 import phasing.PlayerInfo;
 import processing.core.PApplet;
 import screens.Presenter;
 import util.ModInt;
+import util.SineTable;
 
 /**
  * The LiveScorer View type. It listens for note events and every time it
@@ -32,11 +32,17 @@ public class LiveScorer extends View {
     private float halfWidth;
 
     // plot data container:
-    private ArrayList<DataPoint> dataPts1 = new ArrayList<DataPoint>();
-    private ArrayList<DataPoint> dataPts2 = new ArrayList<DataPoint>();
-
-    // musical time bookkeeping:
-    private float durationAcc1, durationAcc2;
+    private final int MAX_DATA_PTS = 512;
+    private DataPoints dataPts1 = new DataPoints(MAX_DATA_PTS);
+    private DataPoints dataPts2 = new DataPoints(MAX_DATA_PTS);
+
+    // the clock the plot is drawn against: how many pixels the notes have
+    // scrolled, and how much opacity they have lost, since the plot was last
+    // cleared:
+    private float scrollX, fadeAcc;
+    // how far the clock may run before the notes are rebased onto it, to keep
+    // the floating point error small:
+    private final float MAX_CLOCK = 100000;
 
     // pixels to musical time conversion
     private final int PIXELS_PER_WHOLE_NOTE = 60;
@@ -188,12 +194,8 @@ public class LiveScorer extends View {
         for (int i = 0; i < ys.length; i++) {
             ys[i] = PApplet.map(ys[i], prevHalfHeight, -prevHalfHeight, halfHeight, -halfHeight);
         }
-        for (DataPoint pt : dataPts1) {
-            pt.startY = PApplet.map(pt.startY, prevHalfHeight, -prevHalfHeight, halfHeight, -halfHeight);
-        }
-        for (DataPoint pt : dataPts2) {
-            pt.startY = PApplet.map(pt.startY, prevHalfHeight, -prevHalfHeight, halfHeight, -halfHeight);
-        }
+        dataPts1.rescaleY(prevHalfHeight, halfHeight);
+        dataPts2.rescaleY(prevHalfHeight, halfHeight);
         initFadeRate();
     }
 
@@ -201,6 +203,8 @@ public class LiveScorer extends View {
     public void wakeUp(float notept1, float notept2) {
         dataPts1.clear();
         dataPts2.clear();
+        scrollX = 0;
+        fadeAcc = 0;
     }
 
     @Override
@@ -226,38 +230,43 @@ public class LiveScorer extends View {
      *            The PhraseReader invoking the callback.
      */
     private void plotNote(PhraseReader reader) {
+        // the note index refers to the reader's snapshot, so read the whole
+        // note from it rather than from the live (possibly edited) phrase
+        PhraseSnapshot snapshot = reader.getSnapshot();
         int noteIndex = reader.getNoteIndex();
 
-        if (!pa.currentPhrase.isRest(noteIndex)) {
-            ArrayList<DataPoint> dataPts = (reader.getId() == Presenter.READER_ONE_ID) ? dataPts1 : dataPts2;
+        if (!snapshot.isRest(noteIndex)) {
+            DataPoints dataPts = (reader.getId() == Presenter.READER_ONE_ID) ? dataPts1 : dataPts2;
 
             float y1 = -1;
             float y2 = -1;
 
-            if (sineWave.toInt() == IS_SINE_WAVE && !pa.currentPhrase.isRest(reader.getNoteIndex())) {
-                float notept = -1;
+            if (sineWave.toInt() == IS_SINE_WAVE) {
+                float notept = snapshot.getOnset(noteIndex);
 
-                if (reader.getId() == Presenter.READER_ONE_ID) {
-                    durationAcc1 = (noteIndex == 0) ? 0 : durationAcc1 + pa.currentPhrase.getSCDuration(noteIndex - 1);
-                    notept = durationAcc1;
-                } else if (reader.getId() == Presenter.READER_TWO_ID) {
-                    durationAcc2 = (noteIndex == 0) ? 0 : durationAcc2 + pa.currentPhrase.getSCDuration(noteIndex - 1);
-                    notept = durationAcc2;
-                }
-
-                float angle1 = PApplet.map(notept, 0, pa.currentPhrase.getTotalDuration(), 0, PApplet.TWO_PI);
-                float angle2 = PApplet.map(notept + pa.currentPhrase.getSCDuration(noteIndex), 0,
-                        pa.currentPhrase.getTotalDuration(), 0, PApplet.TWO_PI);
+                float angle1 = PApplet.map(notept, 0, snapshot.getTotalDuration(), 0, PApplet.TWO_PI);
+                float angle2 = PApplet.map(notept + snapshot.getDuration(noteIndex), 0,
+                        snapshot.getTotalDuration(), 0, PApplet.TWO_PI);
 
-                y1 = spawnY + PApplet.sin(angle1) * halfHeight;
-                y2 = spawnY + PApplet.sin(angle2) * halfHeight;
+                y1 = spawnY + SineTable.DEFAULT.sin(angle1) * halfHeight;
+                y2 = spawnY + SineTable.DEFAULT.sin(angle2) * halfHeight;
             } else {
                 y1 = noteIndexToY(noteIndex);
                 y2 = noteIndexToY((noteIndex + 1) % ys.length);
             }
 
-            dataPts.add(new DataPoint(spawnX, y1,
-                    spawnX + PIXELS_PER_WHOLE_NOTE * pa.currentPhrase.getSCDuration(noteIndex), opacity));
+            // place the note where it would be if it had been plotted the
+            // moment it began (the notes move at player 1's rate)
+            float lag = reader.getLateness() * PIXELS_PER_WHOLE_NOTE;
+            if (reader.getId() == Presenter.READER_TWO_ID) {
+                lag *= pa.getBPM1() / pa.getBPM2();
+            }
+            float x = spawnX - scrollX - lag;
+
+            // store the note relative to the clock, so that it never has to be
+            // moved or faded individually
+            dataPts.add(x, y1, x + PIXELS_PER_WHOLE_NOTE * snapshot.getDuration(noteIndex),
+                    opacity + fadeAcc);
         }
     }
 
@@ -270,73 +279,44 @@ public class LiveScorer extends View {
         if (pa.currentPhrase.getNumNotes() > 0) {
             pa.pushMatrix();
 
-            pa.translate(getCenx(), getCeny());
+            pa.translate(getCenx() + scrollX, getCeny());
 
-            float dx = -dNotept1 * PIXELS_PER_WHOLE_NOTE;
-
-            drawDataPoints(dataPts1, (colorScheme.toInt() == MONOCHROMATIC) ? 0 : pa.getColor1());
-            drawDataPoints(dataPts2, (colorScheme.toInt() == MONOCHROMATIC) ? 0 : pa.getColor2());
+            pa.noStroke();
+            pa.rectMode(pa.CORNER);
+            pa.ellipseMode(pa.CORNER);
+            dataPts1.display((colorScheme.toInt() == MONOCHROMATIC) ? 0 : pa.getColor1());
+            dataPts2.display((colorScheme.toInt() == MONOCHROMATIC) ? 0 : pa.getColor2());
 
             pa.popMatrix();
 
-            if (scoreMode.toInt() == MOVE_NOTES) {
-                scroll(dx, dataPts1);
-                scroll(dx, dataPts2);
+            // advance the clock
+            boolean scroll = (scoreMode.toInt() == MOVE_NOTES);
+            float dx = -dNotept1 * PIXELS_PER_WHOLE_NOTE;
+            if (scroll) {
+                scrollX += dx;
             } else if (scoreMode.toInt() == MOVE_SPAWN_POINT) {
                 moveSpawnPoint(-dx, getHeight() * 0.3f + noteSize);
             }
-            fade(dataPts1, dt);
-            fade(dataPts2, dt);
-        }
-    }
+            fadeAcc += fadeAmt(dt);
 
-    /**
-     * Draws the given list of data points with the given color.
-     * 
-     * @param dataPts
-     *            The list of data points.
-     * @param color
-     *            The color.
-     */
-    private void drawDataPoints(ArrayList<DataPoint> dataPts, int color) {
-        for (DataPoint pt : dataPts) {
-            pt.display(color);
-        }
-    }
+            dataPts1.removeExpired(scroll);
+            dataPts2.removeExpired(scroll);
 
-    /**
-     * Translates a list of data points horizontally by the given dx.
-     * 
-     * @param dx
-     *            The amount of translation.
-     * @param dataPts
-     *            The list of data points to translate.
-     */
-    private void scroll(float dx, ArrayList<DataPoint> dataPts) {
-        // translate data points
-        for (DataPoint pt : dataPts) {
-            pt.translate(dx);
-        }
-
-        // get rid of any data points that are out of bounds
-        while (dataPts.size() > 0 && dataPts.get(0).startX < -halfWidth) {
-            dataPts.remove(0);
+            if (Math.abs(scrollX) > MAX_CLOCK || fadeAcc > MAX_CLOCK) {
+                rebase();
+            }
         }
     }
 
     /**
-     * Fades away a list of data points by the fade rate, which is specified by
-     * a helper method fadeAmt(dt).
-     * 
-     * @param dataPts
-     *            The list of data points.
-     * @param dt
-     *            The number of milliseconds since the last update() invocation.
+     * Moves the clock back to zero, adjusting the stored notes so that they
+     * stay where they are on screen, with the opacity they have.
      */
-    private void fade(ArrayList<DataPoint> dataPts, int dt) {
-        for (DataPoint pt : dataPts) {
-            pt.opacity -= fadeAmt(dt);
-        }
+    private void rebase() {
+        dataPts1.rebase(scrollX, fadeAcc);
+        dataPts2.rebase(scrollX, fadeAcc);
+        scrollX = 0;
+        fadeAcc = 0;
     }
 
     /**
@@ -398,22 +378,49 @@ public class LiveScorer extends View {
         }
     }
 
-    /***************************
-     ***** DataPoint class *****
-     ***************************/
+    /****************************
+     ***** DataPoints class *****
+     ****************************/
 
     /**
-     * A single note in the pitch/time plot of notes, with a start point, an end
-     * point, an opacity, and an index to the Phrase.
+     * The notes in the pitch/time plot of notes, oldest first. Each note has a
+     * start point, an end point, and an opacity.
+     * 
+     * The x-coordinates and opacities are relative to the clock (scrollX and
+     * fadeAcc) at the time the note was plotted. A note's actual x-coordinate
+     * is its stored x-coordinate plus scrollX, and its actual opacity is its
+     * stored opacity minus fadeAcc. So scrolling and fading the notes only
+     * advances the clock, and the notes themselves are left alone.
+     * 
+     * The notes are stored in a ring buffer of parallel float arrays, so
+     * adding a note doesn't allocate anything and getting rid of the oldest
+     * note doesn't shift the others. If the buffer is full, adding a note
+     * gets rid of the oldest one.
      * 
      * @author James Morrow
      *
      */
-    private class DataPoint {
-        float startX, startY, endX;
-        float opacity;
+    private class DataPoints {
+        // the x-coordinates (images of time) at which notes start and end, the
+        // y-coordinates (images of pitch) of notes, and the opacities of notes
+        private final float[] startX, startY, endX, opacity;
+        // the index of the oldest note and the number of notes
+        private int head, size;
+
+        /**
+         * 
+         * @param capacity
+         *            The maximum number of notes.
+         */
+        private DataPoints(int capacity) {
+            startX = new float[capacity];
+            startY = new float[capacity];
+            endX = new float[capacity];
+            opacity = new float[capacity];
+        }
 
         /**
+         * Adds a note.
          * 
          * @param startX
          *            The x-coordinate (an image of time) at which the note
@@ -425,42 +432,99 @@ public class LiveScorer extends View {
          *            ends.
          * @param opacity
          */
-        private DataPoint(float startX, float startY, float endX, float opacity) {
-            this.startX = startX;
-            this.startY = startY;
-            this.endX = endX;
-            this.opacity = opacity;
+        void add(float startX, float startY, float endX, float opacity) {
+            if (size == this.startX.length) {
+                removeOldest();
+            }
+            int i = (head + size) % this.startX.length;
+            this.startX[i] = startX;
+            this.startY[i] = startY;
+            this.endX[i] = endX;
+            this.opacity[i] = opacity;
+            size++;
+        }
+
+        /**
+         * Gets rid of the oldest note.
+         */
+        void removeOldest() {
+            head = (head + 1) % startX.length;
+            size--;
+        }
+
+        /**
+         * Gets rid of every note.
+         */
+        void clear() {
+            head = 0;
+            size = 0;
         }
 
         /**
-         * Translates the note by (dx,0).
+         * Remaps the y-coordinates of the notes from one plot height to
+         * another.
          * 
-         * @param dx
-         *            The number of pixels to translate the note horizontally.
+         * @param prevHalfHeight
+         *            Half the previous height of the plot.
+         * @param halfHeight
+         *            Half the new height of the plot.
          */
-        void translate(float dx) {
-            startX += dx;
-            endX += dx;
+        void rescaleY(float prevHalfHeight, float halfHeight) {
+            for (int j = 0; j < size; j++) {
+                int i = (head + j) % startY.length;
+                startY[i] = PApplet.map(startY[i], prevHalfHeight, -prevHalfHeight, halfHeight, -halfHeight);
+            }
         }
 
         /**
-         * Displays the note with the given color.
+         * Displays the notes with the given color. Assumes the matrix has
+         * already been translated by scrollX.
          * 
          * @param color
+         *            The color.
          */
         void display(int color) {
-            pa.noStroke();
-            pa.fill(color, opacity);
+            for (int j = 0; j < size; j++) {
+                int i = (head + j) % startX.length;
+
+                pa.fill(color, opacity[i] - fadeAcc);
+                if (noteGraphic.toInt() == RECTS2) {
+                    pa.rect(startX[i], startY[i], noteSize, noteSize);
+                } else if (noteGraphic.toInt() == DOTS2) {
+                    pa.ellipse(startX[i], startY[i], noteSize, noteSize);
+                }
+            }
+        }
 
-            float x1 = startX + ROUND_STROKE_CAP_SURPLUS;
-            float x2 = endX - ROUND_STROKE_CAP_SURPLUS;
+        /**
+         * Gets rid of notes that have faded away or, if the notes are
+         * scrolling, that have moved out of bounds.
+         * 
+         * @param scroll
+         *            Whether or not the notes are scrolling.
+         */
+        void removeExpired(boolean scroll) {
+            // the oldest notes are the furthest left and the most faded
+            while (size > 0 && ((scroll && startX[head] + scrollX < -halfWidth) || opacity[head] <= fadeAcc)) {
+                removeOldest();
+            }
+        }
 
-            if (noteGraphic.toInt() == RECTS2) {
-                pa.rectMode(pa.CORNER);
-                pa.rect(startX, startY, noteSize, noteSize);
-            } else if (noteGraphic.toInt() == DOTS2) {
-                pa.ellipseMode(pa.CORNER);
-                pa.ellipse(startX, startY, noteSize, noteSize);
+        /**
+         * Makes the notes relative to a clock that has been moved back by the
+         * given amounts.
+         * 
+         * @param dx
+         *            The amount scrollX is moved back by.
+         * @param dOpacity
+         *            The amount fadeAcc is moved back by.
+         */
+        void rebase(float dx, float dOpacity) {
+            for (int j = 0; j < size; j++) {
+                int i = (head + j) % startX.length;
+                startX[i] += dx;
+                endX[i] += dx;
+                opacity[i] -= dOpacity;
             }
         }
     }
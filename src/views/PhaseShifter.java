@@ -2,14 +2,17 @@ package views;
 
 import java.util.ArrayList;
 
+import geom.Circle;
 import geom.CurvedRect;
 import geom.Rect;
 import phasing.PhasesPApplet;
 import phasing.PhraseReader;
 import phasing.PlayerInfo;
 import processing.core.PApplet;
+import processing.core.PShape;
 import screens.Presenter;
 import util.ModInt;
+import util.SineTable;
 
 /**
  * The PhaseShifter View type. It show two identical plots of notes that are
@@ -40,6 +43,17 @@ public class PhaseShifter extends View {
     private ArrayList<DataPoint> dataPoints = new ArrayList<DataPoint>();
     private ArrayList<DataConnection> dataConnections = new ArrayList<DataConnection>();
 
+    // retained geometry of the notes, and the note graphic and transformation
+    // it was built for:
+    private PShape waveShape;
+    private int waveShapeNoteGraphic, waveShapeTransformation;
+    // the notes are grouped into pieces of a few notes each, so that the wave
+    // can be drawn without the active note in a few draw calls:
+    private static final int NOTES_PER_PIECE = 8;
+    private PShape[] waveNoteShapes; // the geometry of each note (null for rests)
+    // one period of the sine wave, sampled every few pixels:
+    private float[] sineWaveYs;
+
     // options:
     public ModInt activeNoteMode = new ModInt(0, numActiveNoteModes, activeNoteModeName);
     public ModInt transformation = new ModInt(0, numTransformations, transformationName);
@@ -117,6 +131,7 @@ public class PhaseShifter extends View {
         initFontSize();
         initDotRadius();
         initBounds();
+        initSineWave();
         initData();
     }
 
@@ -160,6 +175,18 @@ public class PhaseShifter extends View {
         minRadius = maxRadius * 0.45f;
     }
 
+    /**
+     * Samples one period of the sine wave, so that drawing the sine wave only
+     * has to shift the samples along.
+     */
+    private void initSineWave() {
+        int numSamples = PApplet.max(1, PApplet.round(width / 4));
+        sineWaveYs = new float[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            sineWaveYs[i] = SineTable.DEFAULT.sin(PApplet.TWO_PI * i / numSamples) * halfHeight;
+        }
+    }
+
     /**
      * Initializes note graphic positioning data and stores it so it doesn't
      * have to be constantly recomputed.
@@ -168,6 +195,7 @@ public class PhaseShifter extends View {
         boolean phraseContainsNonRests = false;
         boolean phraseContainsMultipleNonRests = false;
 
+        waveShape = null;
         dataPoints.clear();
         for (int i = 0; i < pa.currentPhrase.getNumNotes(); i++) {
             dataPoints.add(new DataPoint(i));
@@ -346,18 +374,25 @@ public class PhaseShifter extends View {
             transform(waveNum);
             styleNoteGraphics(nonActiveColor);
 
-            for (int i = 0; i < pa.currentPhrase.getNumNotes(); i++) {
-                if (!pa.currentPhrase.isRest(i)) {
-                    if (showActiveNote() && i == activeNote) {
-                        styleNoteGraphics(activeColor);
-                        drawNoteGraphic(dataPoints.get(i));
-                        styleNoteGraphics(nonActiveColor);
-                    } else if (activeNoteMode.toInt() != ONLY_SHOW_ACTIVE_NOTE) {
-                        drawNoteGraphic(dataPoints.get(i));
+            if (activeNoteMode.toInt() != ONLY_SHOW_ACTIVE_NOTE) {
+                PShape shape = getWaveShape();
+                if (shape != null) {
+                    drawWaveShape(shape, showActiveNote() ? activeNote : -1);
+                } else {
+                    for (int i = 0; i < pa.currentPhrase.getNumNotes(); i++) {
+                        if (!pa.currentPhrase.isRest(i) && !(showActiveNote() && i == activeNote)) {
+                            drawNoteGraphic(dataPoints.get(i));
+                        }
                     }
                 }
             }
 
+            // the active note is drawn on top of the rest of the wave
+            if (showActiveNote() && activeNote < dataPoints.size() && !pa.currentPhrase.isRest(activeNote)) {
+                styleNoteGraphics(activeColor);
+                drawNoteGraphic(dataPoints.get(activeNote));
+            }
+
             pa.popMatrix();
         } else if (noteGraphic.toInt() == LINE_SEGMENTS) {
             pa.strokeWeight(lineThickness);
@@ -376,6 +411,36 @@ public class PhaseShifter extends View {
         }
     }
 
+    /**
+     * Draws the retained geometry of the notes, leaving out the given note.
+     * The pieces that don't contain the note are drawn whole, and the notes
+     * of the piece that does are drawn one by one.
+     * 
+     * @param shape
+     *            The geometry.
+     * @param excludedNote
+     *            The index of the note to leave out, or -1 to leave none out.
+     */
+    private void drawWaveShape(PShape shape, int excludedNote) {
+        if (excludedNote < 0 || excludedNote >= waveNoteShapes.length) {
+            pa.shape(shape);
+            return;
+        }
+
+        int excludedPiece = excludedNote / NOTES_PER_PIECE;
+        for (int p = 0; p < shape.getChildCount(); p++) {
+            if (p != excludedPiece) {
+                pa.shape(shape.getChild(p));
+            }
+        }
+        int end = Math.min((excludedPiece + 1) * NOTES_PER_PIECE, waveNoteShapes.length);
+        for (int i = excludedPiece * NOTES_PER_PIECE; i < end; i++) {
+            if (i != excludedNote && waveNoteShapes[i] != null) {
+                pa.shape(waveNoteShapes[i]);
+            }
+        }
+    }
+
     private void drawLineSegments(int waveNum, int activeNote, int nonActiveColor, int activeColor) {
         pa.pushMatrix();
         transform(waveNum);
@@ -383,15 +448,7 @@ public class PhaseShifter extends View {
         if (activeNoteMode.toInt() != ONLY_SHOW_ACTIVE_NOTE) {
             pa.strokeJoin(pa.ROUND);
             pa.stroke(nonActiveColor);
-            pa.beginShape();
-            if (transformation.toInt() == TRANSLATE) {
-                drawLineSegments(waveNum, activeNote, nonActiveColor, activeColor, -width);
-            }
-            drawLineSegments(waveNum, activeNote, nonActiveColor, activeColor, 0);
-            if (transformation.toInt() == TRANSLATE) {
-                drawLineSegments(waveNum, activeNote, nonActiveColor, activeColor, width);
-            }
-            pa.endShape();
+            pa.shape(getWaveShape());
         }
 
         if (showActiveNote()) {
@@ -426,21 +483,98 @@ public class PhaseShifter extends View {
 
     }
 
-    private void drawLineSegments(int waveNum, int activeNote, int nonActiveColor, int activeColor, float xOffset) {
-        int i = 0; // loops through the Phrase's notes
-        int j = 0; // loops through the data connections
-        while (i < pa.currentPhrase.getNumNotes()) {
-            boolean drawConnection = (activeNoteMode.toInt() != ONLY_SHOW_ACTIVE_NOTE || i == activeNote)
-                    && !pa.currentPhrase.isRest(i) && dataConnections.size() > 0;
-            if (drawConnection) {
-                DataConnection c = dataConnections.get(j);
-                pa.vertex(c.d.x() + xOffset, c.d.y());
-                pa.vertex(c.e.x() + xOffset, c.e.y());
-                j++;
+    /**
+     * Gives the retained geometry of the notes for the current note graphic
+     * and transformation, building it if it hasn't been built since the data
+     * was last initialized or since the options last changed. The geometry
+     * doesn't have a style of its own, so it is drawn with whatever style the
+     * PApplet has at the time.
+     * 
+     * @return The geometry, or null if the current note graphic isn't drawn
+     *         from retained geometry.
+     */
+    private PShape getWaveShape() {
+        if (noteGraphic.toInt() != DOTS1 && noteGraphic.toInt() != RECTS1 && noteGraphic.toInt() != LINE_SEGMENTS) {
+            return null;
+        }
+
+        if (waveShape == null || waveShapeNoteGraphic != noteGraphic.toInt()
+                || waveShapeTransformation != transformation.toInt()) {
+            waveShape = (noteGraphic.toInt() == LINE_SEGMENTS) ? createLineSegmentsShape() : createNotesShape();
+            waveShape.disableStyle();
+            waveShapeNoteGraphic = noteGraphic.toInt();
+            waveShapeTransformation = transformation.toInt();
+        }
+        return waveShape;
+    }
+
+    /**
+     * Creates retained geometry of the dots or rects of every note that isn't
+     * a rest, including the copies to either side when the transformation is a
+     * translation. The geometry is a group of pieces, each of which is a group
+     * of the geometry of NOTES_PER_PIECE consecutive notes, and the geometry
+     * of each note is recorded in waveNoteShapes.
+     * 
+     * @return The geometry.
+     */
+    private PShape createNotesShape() {
+        PShape shape = pa.createShape(PApplet.GROUP);
+        float[] xOffsets = (transformation.toInt() == TRANSLATE) ? new float[] {0, -width, width} : new float[] {0};
+        waveNoteShapes = new PShape[pa.currentPhrase.getNumNotes()];
+
+        PShape piece = null;
+        for (int i = 0; i < pa.currentPhrase.getNumNotes(); i++) {
+            if (i % NOTES_PER_PIECE == 0) {
+                piece = pa.createShape(PApplet.GROUP);
+                shape.addChild(piece);
+            }
+            if (!pa.currentPhrase.isRest(i)) {
+                DataPoint d = dataPoints.get(i);
+                PShape note;
+                if (noteGraphic.toInt() == RECTS1 && transformation.toInt() != TRANSLATE) {
+                    note = d.curvedRect().toPShape(pa);
+                } else {
+                    note = pa.createShape(PApplet.GROUP);
+                    for (float xOffset : xOffsets) {
+                        if (noteGraphic.toInt() == DOTS1) {
+                            note.addChild(new Circle(d.x() + xOffset, d.y(), dotRadius).toPShape(pa));
+                        } else {
+                            note.addChild(new Rect(d.x() + xOffset, d.y(), d.twidth, rectHeight, PApplet.CORNER)
+                                    .toPShape(pa));
+                        }
+                    }
+                }
+                piece.addChild(note);
+                waveNoteShapes[i] = note;
             }
-            i++;
         }
 
+        return shape;
+    }
+
+    /**
+     * Creates retained geometry of the line segments connecting the notes that
+     * aren't rests, including the copies to either side when the
+     * transformation is a translation.
+     * 
+     * @return The geometry.
+     */
+    private PShape createLineSegmentsShape() {
+        if (dataConnections.size() == 0) {
+            return pa.createShape(PApplet.GROUP);
+        }
+
+        PShape shape = pa.createShape();
+        shape.beginShape();
+        float[] xOffsets = (transformation.toInt() == TRANSLATE) ? new float[] {-width, 0, width} : new float[] {0};
+        for (float xOffset : xOffsets) {
+            for (DataConnection c : dataConnections) {
+                shape.vertex(c.d.x() + xOffset, c.d.y());
+                shape.vertex(c.e.x() + xOffset, c.e.y());
+            }
+        }
+        shape.endShape();
+        return shape;
     }
 
     /**
@@ -451,23 +585,30 @@ public class PhaseShifter extends View {
      *            transformation (a translation in this case).
      */
     private void drawSineWave(float normalTransform) {
-        int x = (int) -halfWidth;
-        int dx = 4;
-        float amp = halfHeight;
-
-        float translation = normalTransform * width;
-        float theta = pa.map(translation, 0, width, 0, pa.TWO_PI);
-        float dTheta = dx / width * PApplet.TWO_PI;
+        int numSamples = sineWaveYs.length;
+        float dx = width / numSamples;
+
+        // the translation, in samples, split into a whole number of samples
+        // and a fraction of a sample to interpolate by
+        float shift = normalTransform * numSamples;
+        int k = PApplet.floor(shift);
+        float f = shift - k;
+        k %= numSamples;
+        if (k < 0) {
+            k += numSamples;
+        }
 
         pa.strokeJoin(pa.MITER);
         pa.strokeCap(pa.ROUND);
         pa.noFill();
 
         pa.beginShape();
-        while (x <= halfWidth) {
-            pa.vertex(x, pa.sin(theta) * amp);
+        float x = -halfWidth;
+        for (int j = 0; j <= numSamples; j++) {
+            int i = (k + j) % numSamples;
+            int iNext = (i + 1 == numSamples) ? 0 : i + 1;
+            pa.vertex(x, sineWaveYs[i] + (sineWaveYs[iNext] - sineWaveYs[i]) * f);
             x += dx;
-            theta += dTheta;
         }
         pa.endShape();
     }
@@ -611,8 +752,8 @@ public class PhaseShifter extends View {
         final float rx, ry, theta1, theta2, radius;
         // specific to symbols:
         final String pitchName;
-        // specific to curved rects:
-        final CurvedRect curvedRect, curvedRectAlt;
+        // specific to curved rects (created the first time it's needed):
+        CurvedRect curvedRect;
 
         private DataPoint(int i) {
             float normalStart = pa.currentPhrase.getPercentDurationOfSCIndex(i % pa.currentPhrase.getNumNotes());
@@ -634,11 +775,12 @@ public class PhaseShifter extends View {
                     : pa.lerp(minRadius, maxRadius, 0.5f);
             rx = pa.cos(theta1 - pa.HALF_PI) * radius;
             ry = pa.sin(theta1 - pa.HALF_PI) * radius;
-            curvedRect = new CurvedRect(radius, rectHeight, theta1, theta2);
-            curvedRectAlt = new CurvedRect(pa.lerp(minRadius, maxRadius, 0.5f), rectHeight, theta1, theta2);
         }
 
         CurvedRect curvedRect() {
+            if (curvedRect == null) {
+                curvedRect = new CurvedRect(radius, rectHeight, theta1, theta2);
+            }
             return curvedRect;
         }
 